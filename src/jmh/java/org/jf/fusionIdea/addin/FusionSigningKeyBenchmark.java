@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+// Compares the cost of signing a start request with each signature scheme. The request sizes are printed during setup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FusionSigningKeyBenchmark {
+    private static final String MESSAGE = "{\"script\":\"C:\\\\Users\\\\user\\\\scripts\\\\MyScript\\\\MyScript.py\"," +
+            "\"debug\":\"0\",\"pydevd_path\":\"C:\\\\Users\\\\user\\\\AppData\\\\Roaming\\\\JetBrains\\\\" +
+            "PyCharm2022.2\\\\plugins\\\\fusion_idea\\\\lib\\\\pydevd-1.9.0\",\"debug_port\":\"54321\"," +
+            "\"nonce\":\"1697612207123456\"}";
+
+    private final Gson gson = new Gson();
+    private KeyPair rsaKeyPair;
+    private KeyPair ed25519KeyPair;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        KeyPairGenerator rsaKeyGen = KeyPairGenerator.getInstance("RSA");
+        rsaKeyGen.initialize(2048);
+        rsaKeyPair = rsaKeyGen.generateKeyPair();
+        ed25519KeyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+
+        System.out.println();
+        System.out.println("RSA request size: " + rsa().length() + " bytes");
+        System.out.println("Ed25519 request size: " + ed25519().length() + " bytes");
+    }
+
+    @Benchmark
+    public String rsa() {
+        return gson.toJson(FusionAddinClient.sign(FusionSigningKey.RSA, rsaKeyPair, MESSAGE));
+    }
+
+    @Benchmark
+    public String ed25519() {
+        return gson.toJson(FusionAddinClient.sign(FusionSigningKey.ED25519, ed25519KeyPair, MESSAGE));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import org.openjdk.jmh.annotations.*;
+import rawhttp.core.RawHttp;
+import rawhttp.core.RawHttpResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Compares SSDPResponseParser against the RawHttp based parsing that discovery used before it
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SSDPResponseParserBenchmark {
+    private static final byte[] RESPONSE = ("HTTP/1.1 200 OK\r\n" +
+            "CACHE-CONTROL: max-age=1800\r\n" +
+            "ST: fusion_idea:debug\r\n" +
+            "USN: pid:12345\r\n" +
+            "LOCATION: 127.0.0.1:54321\r\n" +
+            "SERVER: fusion_idea/0.7 session ed25519\r\n" +
+            "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] buffer = new byte[1024];
+    private final SSDPResponseParser parser = new SSDPResponseParser();
+    private final RawHttp rawHttp = new RawHttp();
+
+    @Setup
+    public void setup() {
+        System.arraycopy(RESPONSE, 0, buffer, 0, RESPONSE.length);
+    }
+
+    @Benchmark
+    public int byteParser() {
+        if (parser.parse(buffer, 0, RESPONSE.length) != SSDPResponseParser.Result.VALID) {
+            throw new IllegalStateException();
+        }
+        return parser.getPid() + parser.getPort() + parser.getCapabilities() + (int) parser.getVersion();
+    }
+
+    // The same steps as the previous discovery loop
+    @Benchmark
+    public int rawHttp() {
+        String data = new String(buffer, 0, RESPONSE.length);
+        RawHttpResponse<Void> response = rawHttp.parseResponse(data);
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException();
+        }
+
+        String stHeader = response.getHeaders().getFirst("ST").orElse(null);
+        if (!"fusion_idea:debug".equals(stHeader)) {
+            throw new IllegalStateException();
+        }
+
+        String usnHeader = response.getHeaders().getFirst("USN").orElse(null);
+        int pid = Integer.parseInt(usnHeader.split(":")[1]);
+
+        String locationHeader = response.getHeaders().getFirst("Location").orElse(null);
+        if (!locationHeader.startsWith("127.0.0.1:")) {
+            throw new IllegalStateException();
+        }
+        int port = Integer.parseInt(locationHeader.split(":")[1]);
+
+        String serverHeader = response.getHeaders().getFirst("SERVER").orElse(null);
+        float version = Float.parseFloat(serverHeader.substring(12).split(" ")[0]);
+
+        return pid + port + (int) version;
+    }
+}
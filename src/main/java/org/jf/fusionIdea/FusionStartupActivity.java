@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+import org.jf.fusionIdea.addin.FusionAddinRegistry;
+import org.jf.fusionIdea.addin.FusionSigningKey;
+import org.jf.fusionIdea.facet.FusionFacet;
+import org.jf.fusionIdea.facet.FusionProcessService;
+
+public class FusionStartupActivity implements StartupActivity.Background {
+    @Override public void runActivity(@NotNull Project project) {
+        if (FusionFacet.getInstance(project) == null) {
+            return;
+        }
+
+        FusionAddinRegistry.getInstance().startListening();
+        // Warm up the process snapshot, so that it's ready by the time the execution targets are needed
+        FusionProcessService.getInstance().getProcesses();
+        // Make sure the signing keys are loaded or generated before the first launch needs them
+        for (FusionSigningKey signingKey : FusionSigningKey.values()) {
+            signingKey.getKeyPair();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import java.nio.charset.StandardCharsets;
+
+// Optional features that an add-in advertises after the version in its SSDP SERVER header, e.g.
+// "fusion_idea/0.7 session ed25519". Each one is a bit in AddinEndpoint's capability mask.
+public final class AddinCapabilities {
+    // HMAC authenticated sessions, see AddinSession
+    public static final int SESSION = 1;
+    // Requests signed with Ed25519 rather than RSA
+    public static final int ED25519 = 1 << 1;
+    // Accepts the script's content, or the hash of content it has cached, instead of reading the script from disk
+    public static final int SCRIPT_CONTENT = 1 << 2;
+    // Reloads changed modules of a running script in place, via pydevd_reload
+    public static final int HOT_RELOAD = 1 << 3;
+    // Runs a list of jobs from a single request, streaming back the status of each one
+    public static final int BATCH = 1 << 4;
+    // Streams the script's stdout and stderr back over a socket, see FusionOutputChannel
+    public static final int OUTPUT = 1 << 5;
+    // Reports the outcome of the script's run() over the output socket
+    public static final int RESULT = 1 << 6;
+    // Stops a running script given its run id: interrupts it, then terminates it if it doesn't stop within the timeout
+    public static final int CANCEL = 1 << 7;
+
+    private static final String[] NAMES = {
+            "session",
+            "ed25519",
+            "script_content",
+            "hot_reload",
+            "batch",
+            "output",
+            "result",
+            "cancel"
+    };
+
+    static final byte[][] NAME_BYTES;
+    static {
+        NAME_BYTES = new byte[NAMES.length][];
+        for (int i = 0; i < NAMES.length; i++) {
+            NAME_BYTES[i] = NAMES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private AddinCapabilities() {
+    }
+
+    public static String toString(int capabilities) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if ((capabilities & (1 << i)) != 0) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(NAMES[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
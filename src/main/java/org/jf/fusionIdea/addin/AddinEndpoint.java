@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import org.jetbrains.annotations.Nullable;
+
+public class AddinEndpoint {
+    private final int pid;
+    private final int port;
+    @Nullable private final Float version;
+    private final int capabilities;
+    private final long lastSeenNanos;
+
+    public AddinEndpoint(int pid, int port, @Nullable Float version, int capabilities, long lastSeenNanos) {
+        this.pid = pid;
+        this.port = port;
+        this.version = version;
+        this.capabilities = capabilities;
+        this.lastSeenNanos = lastSeenNanos;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // Parsed from the SERVER header. null if it couldn't be parsed.
+    @Nullable
+    public Float getVersion() {
+        return version;
+    }
+
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    public boolean hasCapability(int capability) {
+        return (capabilities & capability) != 0;
+    }
+
+    public AddinEndpoint withLastSeenNanos(long lastSeenNanos) {
+        return new AddinEndpoint(pid, port, version, capabilities, lastSeenNanos);
+    }
+
+    // The System.nanoTime() at which the add-in last responded
+    public long getLastSeenNanos() {
+        return lastSeenNanos;
+    }
+
+    @Override public String toString() {
+        return "AddinEndpoint{pid=" + pid + ", port=" + port + ", version=" + version +
+                ", capabilities=" + AddinCapabilities.toString(capabilities) + "}";
+    }
+}
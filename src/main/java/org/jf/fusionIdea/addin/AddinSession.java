@@ -0,0 +1,139 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Bytes;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A session is opened with a single signed request, in which both sides exchange ephemeral X25519 keys. Later requests
+// are authenticated with an HMAC derived from the shared secret, rather than a full signature.
+class AddinSession {
+    private static final String KEY_AGREEMENT_ALGORITHM = "X25519";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int RAW_PUBLIC_KEY_LENGTH = 32;
+
+    // The DER prefix of an X.509 SubjectPublicKeyInfo for an X25519 key, minus the raw 32 byte key itself
+    private static final byte[] X25519_SPKI_PREFIX = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00
+    };
+
+    private final String id;
+    private final int port;
+    private final SecretKeySpec key;
+    private final AtomicLong counter = new AtomicLong();
+
+    private AddinSession(String id, int port, SecretKeySpec key) {
+        this.id = id;
+        this.port = port;
+        this.key = key;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @NotNull
+    static KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        return KeyPairGenerator.getInstance(KEY_AGREEMENT_ALGORITHM).generateKeyPair();
+    }
+
+    // The raw 32 byte key, base64 encoded, as the add-in expects
+    @NotNull
+    static String encodePublicKey(@NotNull PublicKey publicKey) {
+        byte[] encoded = publicKey.getEncoded();
+        return BaseEncoding.base64().encode(
+                Arrays.copyOfRange(encoded, encoded.length - RAW_PUBLIC_KEY_LENGTH, encoded.length));
+    }
+
+    @NotNull
+    static AddinSession open(@NotNull String id, int port, @NotNull PrivateKey privateKey,
+                             @NotNull String addinPublicKey) throws GeneralSecurityException {
+        byte[] rawPublicKey;
+        try {
+            rawPublicKey = BaseEncoding.base64().decode(addinPublicKey);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidKeyException("Invalid session public key", ex);
+        }
+        if (rawPublicKey.length != RAW_PUBLIC_KEY_LENGTH) {
+            throw new InvalidKeyException("Invalid session public key length: " + rawPublicKey.length);
+        }
+
+        PublicKey publicKey;
+        try {
+            publicKey = KeyFactory.getInstance(KEY_AGREEMENT_ALGORITHM).generatePublic(
+                    new X509EncodedKeySpec(Bytes.concat(X25519_SPKI_PREFIX, rawPublicKey)));
+        } catch (InvalidKeySpecException ex) {
+            throw new InvalidKeyException(ex);
+        }
+
+        KeyAgreement keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT_ALGORITHM);
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(publicKey, true);
+        byte[] sharedSecret = keyAgreement.generateSecret();
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        sha256.update(sharedSecret);
+        sha256.update(id.getBytes(StandardCharsets.UTF_8));
+
+        return new AddinSession(id, port, new SecretKeySpec(sha256.digest(), MAC_ALGORITHM));
+    }
+
+    @NotNull
+    Map<String, Object> wrap(@NotNull String message) {
+        long counter = this.counter.incrementAndGet();
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update((counter + ":").getBytes(StandardCharsets.UTF_8));
+            byte[] hmac = mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+
+            return ImmutableMap.of(
+                    "message", message,
+                    "session_id", id,
+                    "counter", Long.toString(counter),
+                    "hmac", BaseEncoding.base16().encode(hmac));
+        } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
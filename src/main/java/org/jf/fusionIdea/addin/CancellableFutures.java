@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// Like thenCompose and friends, except that cancelling the resulting future also cancels whichever stage is in
+// progress, e.g. an in-flight http request. Continuations run on the pooled executor, so they never end up on the EDT.
+public final class CancellableFutures {
+    private CancellableFutures() {
+    }
+
+    @NotNull
+    public static <T, U> CompletableFuture<U> compose(@NotNull CompletableFuture<T> source,
+                                                      @NotNull Function<? super T, CompletableFuture<U>> fn) {
+        return composeHandled(source, (value, ex) -> {
+            if (ex != null) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            return fn.apply(value);
+        });
+    }
+
+    @NotNull
+    public static <T, U> CompletableFuture<U> transform(@NotNull CompletableFuture<T> source,
+                                                        @NotNull Function<? super T, U> fn) {
+        return compose(source, value -> CompletableFuture.completedFuture(fn.apply(value)));
+    }
+
+    // fn receives the unwrapped exception, not a CompletionException
+    @NotNull
+    public static <T> CompletableFuture<T> recover(@NotNull CompletableFuture<T> source,
+                                                   @NotNull Function<Throwable, CompletableFuture<T>> fn) {
+        return composeHandled(source, (value, ex) -> {
+            if (ex != null) {
+                return fn.apply(ex);
+            }
+            return CompletableFuture.completedFuture(value);
+        });
+    }
+
+    @NotNull
+    public static <T> CompletableFuture<T> fromListenable(@NotNull ListenableFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override public void onFailure(@NotNull Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+        }, MoreExecutors.directExecutor());
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @NotNull
+    public static Throwable unwrap(@NotNull Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    @NotNull
+    private static <T, U> CompletableFuture<U> composeHandled(
+            @NotNull CompletableFuture<T> source,
+            @NotNull BiFunction<? super T, Throwable, CompletableFuture<U>> fn) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+
+        source.whenCompleteAsync((value, ex) -> {
+            if (result.isDone()) {
+                return;
+            }
+
+            CompletableFuture<U> next;
+            try {
+                next = fn.apply(value, ex == null ? null : unwrap(ex));
+            } catch (Throwable throwable) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+
+            result.whenComplete((nextValue, nextEx) -> {
+                if (result.isCancelled()) {
+                    next.cancel(true);
+                }
+            });
+            next.whenComplete((nextValue, nextEx) -> {
+                if (nextEx != null) {
+                    result.completeExceptionally(unwrap(nextEx));
+                } else {
+                    result.complete(nextValue);
+                }
+            });
+        }, PooledThreadExecutor.INSTANCE);
+        return result;
+    }
+}
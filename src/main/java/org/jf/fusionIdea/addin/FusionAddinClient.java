@@ -0,0 +1,342 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Requests are signed with Ed25519 if the add-in supports it, or RSA otherwise. Add-ins that support sessions get a
+// session opened with the first request, which makes later requests much cheaper to authenticate.
+public class FusionAddinClient {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Gson gson = new Gson();
+    private final ConcurrentMap<Integer, CompletableFuture<AddinSession>> sessions = new ConcurrentHashMap<>();
+    private final NonceGenerator nonceGenerator = new NonceGenerator();
+    private final Cache<String, Boolean> cachedScripts = CacheBuilder.newBuilder().maximumSize(256).build();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .executor(PooledThreadExecutor.INSTANCE)
+            .build();
+
+    public static FusionAddinClient getInstance() {
+        return ApplicationManager.getApplication().getService(FusionAddinClient.class);
+    }
+
+    // Signing can block on the credential store, so don't call this on the EDT
+    @NotNull
+    public CompletableFuture<String> sendRequest(@NotNull AddinEndpoint endpoint,
+                                                 @NotNull Map<String, Object> request) {
+        return sendRequest(endpoint, request, REQUEST_TIMEOUT);
+    }
+
+    @NotNull
+    public CompletableFuture<String> sendRequest(@NotNull AddinEndpoint endpoint,
+                                                 @NotNull Map<String, Object> request,
+                                                 @NotNull Duration timeout) {
+        return send(endpoint, request, timeout, () -> HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    // The add-in streams back its response one line at a time. Each line goes to lineConsumer on a pooled thread.
+    @NotNull
+    public CompletableFuture<Void> sendStreamingRequest(@NotNull AddinEndpoint endpoint,
+                                                       @NotNull Map<String, Object> request,
+                                                       @NotNull Duration timeout,
+                                                       @NotNull Consumer<String> lineConsumer) {
+        return send(endpoint, request, timeout, () -> responseInfo -> {
+            if (responseInfo.statusCode() != HttpURLConnection.HTTP_OK) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            return HttpResponse.BodySubscribers.fromLineSubscriber(new Flow.Subscriber<String>() {
+                @Override public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override public void onNext(String line) {
+                    lineConsumer.accept(line);
+                }
+
+                @Override public void onError(Throwable throwable) {
+                }
+
+                @Override public void onComplete() {
+                }
+            });
+        });
+    }
+
+    // bodyHandler is called again for each attempt, in case the request is resent
+    @NotNull
+    private <T> CompletableFuture<T> send(@NotNull AddinEndpoint endpoint, @NotNull Map<String, Object> request,
+                                          @NotNull Duration timeout,
+                                          @NotNull Supplier<HttpResponse.BodyHandler<T>> bodyHandler) {
+        if (!endpoint.hasCapability(AddinCapabilities.SESSION)) {
+            return post(endpoint.getPort(), sign(endpoint, toMessage(request)), timeout, bodyHandler.get());
+        }
+
+        return CancellableFutures.compose(getSession(endpoint), session -> {
+            if (session == null) {
+                return post(endpoint.getPort(), sign(endpoint, toMessage(request)), timeout, bodyHandler.get());
+            }
+            CompletableFuture<T> sessionRequest =
+                    post(endpoint.getPort(), session.wrap(toMessage(request)), timeout, bodyHandler.get());
+            return CancellableFutures.recover(sessionRequest, ex -> {
+                if (!(ex instanceof AddinResponseException) || (
+                        ((AddinResponseException) ex).getStatusCode() != HttpURLConnection.HTTP_UNAUTHORIZED &&
+                        ((AddinResponseException) ex).getStatusCode() != HttpURLConnection.HTTP_FORBIDDEN)) {
+                    return CompletableFuture.failedFuture(ex);
+                }
+                // The add-in doesn't know about this session anymore, e.g. if it was restarted. Fall back to a
+                // signed request, and open a new session next time.
+                FusionIdeaPlugin.log.debug("Session rejected by add-in: " + endpoint);
+                sessions.computeIfPresent(endpoint.getPid(),
+                        (pid, sessionFuture) -> sessionFuture.getNow(null) == session ? null : sessionFuture);
+                return post(endpoint.getPort(), sign(endpoint, toMessage(request)), timeout, bodyHandler.get());
+            });
+        });
+    }
+
+    // If so, the add-in can presumably run the script from its cache
+    public boolean isScriptCached(@NotNull AddinEndpoint endpoint, @NotNull String scriptHash) {
+        return cachedScripts.getIfPresent(getScriptCacheKey(endpoint, scriptHash)) != null;
+    }
+
+    public void setScriptCached(@NotNull AddinEndpoint endpoint, @NotNull String scriptHash, boolean cached) {
+        String key = getScriptCacheKey(endpoint, scriptHash);
+        if (cached) {
+            cachedScripts.put(key, Boolean.TRUE);
+        } else {
+            cachedScripts.invalidate(key);
+        }
+    }
+
+    @NotNull
+    private static String getScriptCacheKey(@NotNull AddinEndpoint endpoint, @NotNull String scriptHash) {
+        // The port changes if the add-in is restarted, which also clears its cache
+        return endpoint.getPid() + ":" + endpoint.getPort() + ":" + scriptHash;
+    }
+
+    @NotNull
+    public static FusionSigningKey getSigningKey(@NotNull AddinEndpoint endpoint) {
+        if (endpoint.hasCapability(AddinCapabilities.ED25519)) {
+            return FusionSigningKey.ED25519;
+        }
+        return FusionSigningKey.RSA;
+    }
+
+    // Concurrent callers share a single session open. Completes with null if a session couldn't be opened.
+    @NotNull
+    private CompletableFuture<AddinSession> getSession(@NotNull AddinEndpoint endpoint) {
+        CompletableFuture<AddinSession> newSessionFuture = new CompletableFuture<>();
+        CompletableFuture<AddinSession> sessionFuture = sessions.compute(endpoint.getPid(), (pid, existing) -> {
+            if (existing != null) {
+                if (!existing.isDone()) {
+                    return existing;
+                }
+                AddinSession session = existing.getNow(null);
+                if (session != null && session.getPort() == endpoint.getPort()) {
+                    return existing;
+                }
+            }
+            return newSessionFuture;
+        });
+
+        if (sessionFuture == newSessionFuture) {
+            // Opened outside of compute(), since signing can block, e.g. on the password safe
+            CompletableFuture<AddinSession> openFuture;
+            try {
+                openFuture = openSession(endpoint);
+            } catch (RuntimeException ex) {
+                sessions.remove(endpoint.getPid(), newSessionFuture);
+                newSessionFuture.completeExceptionally(ex);
+                throw ex;
+            }
+            openFuture.thenAccept(session -> {
+                // Don't keep failed attempts around, so that the next request tries again.
+                if (session == null) {
+                    sessions.remove(endpoint.getPid(), newSessionFuture);
+                }
+                newSessionFuture.complete(session);
+            });
+        }
+        // Don't let a cancelled request cancel the shared session open
+        return sessionFuture.copy();
+    }
+
+    @NotNull
+    private CompletableFuture<AddinSession> openSession(@NotNull AddinEndpoint endpoint) {
+        KeyPair sessionKeyPair;
+        try {
+            sessionKeyPair = AddinSession.generateKeyPair();
+        } catch (GeneralSecurityException | UnsupportedOperationException ex) {
+            FusionIdeaPlugin.log.warn("Couldn't open a session with the add-in: " + endpoint, ex);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return post(endpoint.getPort(), sign(endpoint, toMessage(
+                ImmutableMap.of(
+                        "action", "open_session",
+                        "session_pubkey", AddinSession.encodePublicKey(sessionKeyPair.getPublic())))),
+                REQUEST_TIMEOUT, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> parseSession(endpoint, sessionKeyPair, response))
+                .exceptionally(ex -> {
+                    FusionIdeaPlugin.log.warn("Couldn't open a session with the add-in: " + endpoint,
+                            CancellableFutures.unwrap(ex));
+                    return null;
+                });
+    }
+
+    @Nullable
+    private AddinSession parseSession(@NotNull AddinEndpoint endpoint, @NotNull KeyPair sessionKeyPair,
+                                      @NotNull String response) {
+        try {
+            JsonObject responseObject = gson.fromJson(response, JsonObject.class);
+            if (responseObject == null || !responseObject.has("session_id") ||
+                    !responseObject.has("session_pubkey")) {
+                FusionIdeaPlugin.log.warn("Unexpected response when opening session: " + response);
+                return null;
+            }
+
+            return AddinSession.open(
+                    responseObject.get("session_id").getAsString(),
+                    endpoint.getPort(),
+                    sessionKeyPair.getPrivate(),
+                    responseObject.get("session_pubkey").getAsString());
+        } catch (GeneralSecurityException | JsonParseException | IllegalStateException |
+                IllegalArgumentException | UnsupportedOperationException ex) {
+            FusionIdeaPlugin.log.warn("Couldn't open a session with the add-in: " + endpoint, ex);
+            return null;
+        }
+    }
+
+    // Only checks that something is listening on the port. This isn't authenticated.
+    @NotNull
+    CompletableFuture<Boolean> probe(int port, @NotNull Duration timeout) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/"))
+                .timeout(timeout)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+
+        // We don't care what the actual response is, just that there's an http server there to respond.
+        CompletableFuture<Boolean> probe = CancellableFutures.transform(
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()), response -> true);
+        return CancellableFutures.recover(probe, ex -> {
+            if (ex instanceof CancellationException) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            FusionIdeaPlugin.log.debug("Probe of add-in port " + port + " failed", ex);
+            return CompletableFuture.completedFuture(false);
+        });
+    }
+
+    @NotNull
+    private String toMessage(@NotNull Map<String, Object> request) {
+        Map<String, Object> message = new LinkedHashMap<>(request);
+        message.put("nonce", Long.toString(nonceGenerator.next()));
+        return gson.toJson(message);
+    }
+
+    @NotNull
+    private Map<String, Object> sign(@NotNull AddinEndpoint endpoint, @NotNull String message) {
+        FusionSigningKey signingKey = getSigningKey(endpoint);
+        return sign(signingKey, signingKey.getKeyPair(), message);
+    }
+
+    @NotNull
+    static Map<String, Object> sign(@NotNull FusionSigningKey signingKey, @NotNull KeyPair keyPair,
+                                    @NotNull String message) {
+        BaseEncoding base16 = BaseEncoding.base16();
+        byte[] signature = signingKey.sign(keyPair.getPrivate(), message);
+
+        if (signingKey == FusionSigningKey.ED25519) {
+            return ImmutableMap.of(
+                    "message", message,
+                    "signature", base16.encode(signature),
+                    "algorithm", "ed25519",
+                    "pubkey", base16.encode(FusionSigningKey.getRawEd25519PublicKey(keyPair.getPublic())));
+        }
+
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        return ImmutableMap.of(
+                "message", message,
+                "signature", base16.encode(signature),
+                "pubkey_modulus", publicKey.getModulus().toString(),
+                "pubkey_exponent", publicKey.getPublicExponent().toString());
+    }
+
+    @NotNull
+    private <T> CompletableFuture<T> post(int port, @NotNull Map<String, Object> envelope, @NotNull Duration timeout,
+                                          @NotNull HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/"))
+                .timeout(timeout)
+                .header("Content-Type", "application/json; utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(envelope), StandardCharsets.UTF_8))
+                .build();
+
+        return CancellableFutures.compose(httpClient.sendAsync(request, bodyHandler), response -> {
+            if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                return CompletableFuture.failedFuture(new AddinResponseException(response.statusCode()));
+            }
+            return CompletableFuture.completedFuture(response.body());
+        });
+    }
+}
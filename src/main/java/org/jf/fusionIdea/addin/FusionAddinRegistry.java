@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Caches the add-in endpoint of each Fusion 360 process, so that a launch doesn't need a full SSDP discovery. An
+// endpoint we haven't heard from recently is kept as the process's last known endpoint, and is probed before falling
+// back to discovery.
+public class FusionAddinRegistry implements Disposable {
+    public static final Topic<Listener> TOPIC = Topic.create("Fusion add-in endpoints", Listener.class);
+
+    public interface Listener {
+        void endpointsChanged();
+    }
+
+    private static final long ENDPOINT_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long REFRESH_INTERVAL_SECONDS = 10;
+    private static final Duration PROBE_TIMEOUT = Duration.ofMillis(250);
+
+    private final ConcurrentMap<Integer, AddinEndpoint> endpoints = new ConcurrentHashMap<>();
+    private final ListeningExecutorService executor =
+            MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ScheduledFuture<?> refreshTask;
+    private final AtomicBoolean listening = new AtomicBoolean();
+    private final SSDPNotifyListener notifyListener = new SSDPNotifyListener(this::recordEndpoint, this::invalidate);
+
+    public FusionAddinRegistry() {
+        refreshTask = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                this::refresh, REFRESH_INTERVAL_SECONDS, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static FusionAddinRegistry getInstance() {
+        return ApplicationManager.getApplication().getService(FusionAddinRegistry.class);
+    }
+
+    public void startListening() {
+        if (listening.compareAndSet(false, true)) {
+            notifyListener.start();
+        }
+    }
+
+    @Nullable
+    public AddinEndpoint getEndpoint(int pid) {
+        AddinEndpoint endpoint = endpoints.get(pid);
+        if (endpoint == null || System.nanoTime() - endpoint.getLastSeenNanos() > ENDPOINT_TTL_NANOS) {
+            return null;
+        }
+        return endpoint;
+    }
+
+    public Map<Integer, AddinEndpoint> getEndpoints() {
+        Map<Integer, AddinEndpoint> result = new HashMap<>();
+        long now = System.nanoTime();
+        for (AddinEndpoint endpoint : endpoints.values()) {
+            if (now - endpoint.getLastSeenNanos() <= ENDPOINT_TTL_NANOS) {
+                result.put(endpoint.getPid(), endpoint);
+            }
+        }
+        return result;
+    }
+
+    // Collects the responses from every add-in that answers within the discovery window
+    public FluentFuture<Map<Integer, AddinEndpoint>> discoverAll() {
+        Map<Integer, AddinEndpoint> discoveredEndpoints = new ConcurrentHashMap<>();
+        return new SSDPServer(SSDPServer.ANY_PID, endpoint -> {
+            discoveredEndpoints.put(endpoint.getPid(), endpoint);
+            recordEndpoint(endpoint);
+        }).start(executor).transform(unused -> discoveredEndpoints, MoreExecutors.directExecutor());
+    }
+
+    public void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        discoverAll().addListener(() -> refreshing.set(false), MoreExecutors.directExecutor());
+    }
+
+    // The add-in usually keeps the same port for the lifetime of the Fusion process, so the last known port is probed
+    // first, and SSDP discovery is only used if that fails.
+    public FluentFuture<AddinEndpoint> findEndpoint(int pid) {
+        AddinEndpoint endpoint = getEndpoint(pid);
+        if (endpoint != null) {
+            return FluentFuture.from(Futures.immediateFuture(endpoint));
+        }
+
+        AddinEndpoint lastKnownEndpoint = endpoints.get(pid);
+        if (lastKnownEndpoint == null) {
+            return discover(pid);
+        }
+
+        return probe(lastKnownEndpoint).transformAsync(probedEndpoint -> {
+            if (probedEndpoint != null) {
+                return Futures.immediateFuture(probedEndpoint);
+            }
+            if (endpoints.remove(pid, lastKnownEndpoint)) {
+                fireEndpointsChanged();
+            }
+            return discover(pid);
+        }, MoreExecutors.directExecutor());
+    }
+
+    private FluentFuture<AddinEndpoint> discover(int pid) {
+        return new SSDPServer(pid, this::recordEndpoint).start(executor);
+    }
+
+    private FluentFuture<AddinEndpoint> probe(AddinEndpoint endpoint) {
+        SettableFuture<AddinEndpoint> result = SettableFuture.create();
+        CompletableFuture<Boolean> probe = FusionAddinClient.getInstance().probe(endpoint.getPort(), PROBE_TIMEOUT);
+        probe.whenComplete((responded, ex) -> {
+            if (ex != null || !responded) {
+                result.set(null);
+                return;
+            }
+            AddinEndpoint probedEndpoint = endpoint.withLastSeenNanos(System.nanoTime());
+            recordEndpoint(probedEndpoint);
+            result.set(probedEndpoint);
+        });
+        result.addListener(() -> {
+            if (result.isCancelled()) {
+                probe.cancel(true);
+            }
+        }, MoreExecutors.directExecutor());
+        return FluentFuture.from(result);
+    }
+
+    public boolean hasKnownEndpoint(int pid) {
+        return endpoints.containsKey(pid);
+    }
+
+    public void invalidate(int pid) {
+        if (endpoints.remove(pid) != null) {
+            fireEndpointsChanged();
+        }
+    }
+
+    void recordEndpoint(@NotNull AddinEndpoint endpoint) {
+        int pid = endpoint.getPid();
+        if (endpoints.put(pid, endpoint) == null) {
+            ProcessHandle.of(pid).ifPresent(process -> process.onExit().thenRun(() -> invalidate(pid)));
+            fireEndpointsChanged();
+        }
+    }
+
+    private void fireEndpointsChanged() {
+        ApplicationManager.getApplication().getMessageBus().syncPublisher(TOPIC).endpointsChanged();
+    }
+
+    private void refresh() {
+        if (!endpoints.isEmpty()) {
+            refreshInBackground();
+        }
+    }
+
+    @Override public void dispose() {
+        refreshTask.cancel(false);
+        notifyListener.stop();
+    }
+}
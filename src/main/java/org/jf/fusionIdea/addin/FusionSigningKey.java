@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.common.io.BaseEncoding;
+import com.intellij.credentialStore.CredentialAttributes;
+import com.intellij.credentialStore.CredentialAttributesKt;
+import com.intellij.credentialStore.Credentials;
+import com.intellij.ide.passwordSafe.PasswordSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+// Kept in the credential store, so the add-in sees the same public key across IDE sessions
+public enum FusionSigningKey {
+    RSA("RSA", "SHA1WithRSA", "RSA Signing Key") {
+        @NotNull @Override protected byte[] getPublicKeyHashInput(@NotNull PublicKey publicKey) {
+            RSAPublicKey rsaPublicKey = (RSAPublicKey) publicKey;
+            return (rsaPublicKey.getModulus().toString() + ":" +
+                    rsaPublicKey.getPublicExponent().toString()).getBytes();
+        }
+
+        @Override protected void generate(@NotNull KeyPairGenerator keyGen) {
+            keyGen.initialize(2048);
+        }
+    },
+    // For add-ins that advertise AddinCapabilities.ED25519
+    ED25519("Ed25519", "Ed25519", "Ed25519 Signing Key") {
+        @NotNull @Override protected byte[] getPublicKeyHashInput(@NotNull PublicKey publicKey) {
+            return getRawEd25519PublicKey(publicKey);
+        }
+    };
+
+    private static final int RAW_ED25519_PUBLIC_KEY_LENGTH = 32;
+
+    private final String keyAlgorithm;
+    private final String signatureAlgorithm;
+    private final CredentialAttributes credentialAttributes;
+
+    private final Object lock = new Object();
+    private volatile KeyPair keyPair;
+    private volatile String publicKeyHash;
+
+    FusionSigningKey(String keyAlgorithm, String signatureAlgorithm, String credentialName) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.credentialAttributes = new CredentialAttributes(
+                CredentialAttributesKt.generateServiceName("Fusion 360 Scripting", credentialName));
+    }
+
+    @NotNull
+    protected abstract byte[] getPublicKeyHashInput(@NotNull PublicKey publicKey);
+
+    protected void generate(@NotNull KeyPairGenerator keyGen) {
+    }
+
+    // Can block on the credential store, so don't call this on the EDT
+    @NotNull
+    public KeyPair getKeyPair() {
+        KeyPair keyPair = this.keyPair;
+        if (keyPair == null) {
+            synchronized (lock) {
+                keyPair = this.keyPair;
+                if (keyPair == null) {
+                    keyPair = loadOrCreateKeyPair();
+                    this.keyPair = keyPair;
+                }
+            }
+        }
+        return keyPair;
+    }
+
+    @NotNull
+    public String getPublicKeyHash() {
+        String publicKeyHash = this.publicKeyHash;
+        if (publicKeyHash == null) {
+            try {
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                sha1.update(getPublicKeyHashInput(getKeyPair().getPublic()));
+
+                publicKeyHash = BaseEncoding.base16().encode(sha1.digest());
+                this.publicKeyHash = publicKeyHash;
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return publicKeyHash;
+    }
+
+    @NotNull
+    public byte[] sign(@NotNull String message) {
+        return sign(getKeyPair().getPrivate(), message);
+    }
+
+    @NotNull
+    byte[] sign(@NotNull PrivateKey privateKey, @NotNull String message) {
+        try {
+            Signature signature = Signature.getInstance(signatureAlgorithm);
+            signature.initSign(privateKey);
+            signature.update(message.getBytes(StandardCharsets.UTF_8));
+            return signature.sign();
+        } catch (NoSuchAlgorithmException | SignatureException | InvalidKeyException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // The raw 32 byte public key, as the add-in expects
+    @NotNull
+    static byte[] getRawEd25519PublicKey(@NotNull PublicKey publicKey) {
+        byte[] encoded = publicKey.getEncoded();
+        return Arrays.copyOfRange(encoded, encoded.length - RAW_ED25519_PUBLIC_KEY_LENGTH, encoded.length);
+    }
+
+    @NotNull
+    private KeyPair loadOrCreateKeyPair() {
+        KeyPair keyPair = loadKeyPair();
+        if (keyPair != null) {
+            return keyPair;
+        }
+
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(keyAlgorithm);
+            generate(keyGen);
+            keyPair = keyGen.generateKeyPair();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        BaseEncoding base64 = BaseEncoding.base64();
+        PasswordSafe.getInstance().set(credentialAttributes, new Credentials(
+                base64.encode(keyPair.getPublic().getEncoded()),
+                base64.encode(keyPair.getPrivate().getEncoded())));
+        return keyPair;
+    }
+
+    @Nullable
+    private KeyPair loadKeyPair() {
+        Credentials credentials = PasswordSafe.getInstance().get(credentialAttributes);
+        if (credentials == null || credentials.getUserName() == null || credentials.getPasswordAsString() == null) {
+            return null;
+        }
+
+        try {
+            BaseEncoding base64 = BaseEncoding.base64();
+            KeyFactory keyFactory = KeyFactory.getInstance(keyAlgorithm);
+            PublicKey publicKey = keyFactory.generatePublic(
+                    new X509EncodedKeySpec(base64.decode(credentials.getUserName())));
+            PrivateKey privateKey = keyFactory.generatePrivate(
+                    new PKCS8EncodedKeySpec(base64.decode(credentials.getPasswordAsString())));
+            return new KeyPair(publicKey, privateKey);
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException | IllegalArgumentException ex) {
+            FusionIdeaPlugin.log.warn("Couldn't load the stored " + keyAlgorithm +
+                    " signing key. A new key will be generated.", ex);
+            return null;
+        }
+    }
+}
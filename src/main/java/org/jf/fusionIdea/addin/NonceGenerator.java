@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.intellij.ide.util.PropertiesComponent;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Nonces are the epoch time in microseconds, which keeps them increasing across restarts. In case the clock goes
+// backwards, a high-water mark is persisted ahead of the nonces handed out, and the next IDE session starts above it.
+class NonceGenerator {
+    private static final String RESERVED_NONCE_KEY = "org.jf.fusionIdea.reservedNonce";
+
+    // Roughly 15 minutes' worth of nonces per write of the high-water mark
+    private static final long RESERVATION_BLOCK = 1_000_000_000L;
+
+    private final AtomicLong lastNonce;
+    private final AtomicLong reservedNonce;
+
+    NonceGenerator() {
+        long reserved = PropertiesComponent.getInstance().getLong(RESERVED_NONCE_KEY, 0);
+        lastNonce = new AtomicLong(Math.max(reserved, currentEpochMicros()));
+        reservedNonce = new AtomicLong(reserved);
+    }
+
+    long next() {
+        long nonce = lastNonce.accumulateAndGet(currentEpochMicros(), (last, now) -> Math.max(last + 1, now));
+
+        long reserved = reservedNonce.get();
+        while (nonce >= reserved) {
+            if (reservedNonce.compareAndSet(reserved, nonce + RESERVATION_BLOCK)) {
+                persistReservation();
+                break;
+            }
+            reserved = reservedNonce.get();
+        }
+        return nonce;
+    }
+
+    private synchronized void persistReservation() {
+        // Always write the latest reservation, in case a concurrent reservation was persisted before us
+        PropertiesComponent.getInstance().setValue(RESERVED_NONCE_KEY, Long.toString(reservedNonce.get()));
+    }
+
+    private static long currentEpochMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.Nullable;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+// Listens for the NOTIFY messages that the add-in multicasts when it starts up or shuts down
+class SSDPNotifyListener {
+    private final Consumer<AddinEndpoint> aliveListener;
+    private final IntConsumer byebyeListener;
+
+    private volatile boolean stopped;
+    @Nullable private volatile Selector selector;
+
+    SSDPNotifyListener(Consumer<AddinEndpoint> aliveListener, IntConsumer byebyeListener) {
+        this.aliveListener = aliveListener;
+        this.byebyeListener = byebyeListener;
+    }
+
+    void start() {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                listen();
+            } catch (IOException ex) {
+                FusionIdeaPlugin.log.warn("Error while listening for add-in notifications", ex);
+            }
+        });
+    }
+
+    void stop() {
+        stopped = true;
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    @Nullable
+    private DatagramChannel joinGroup(Selector selector, ProtocolFamily family, String multicastGroup) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open(family);
+            // There may be other SSDP listeners on this machine, e.g. the OS's SSDP service, or another instance of
+            // the IDE
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(SSDPServer.MULTICAST_PORT));
+
+            InetAddress group = InetAddress.getByName(multicastGroup);
+            boolean joined = false;
+            // The add-in is always on this machine. Joining on other interfaces would let anything on the LAN announce
+            // or retire an add-in.
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() || !networkInterface.isLoopback()) {
+                    continue;
+                }
+                try {
+                    channel.join(group, networkInterface);
+                    joined = true;
+                } catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+                    // This interface doesn't support this address family. Nothing to worry about.
+                }
+            }
+            if (!joined) {
+                channel.close();
+                return null;
+            }
+
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            return channel;
+        } catch (IOException | UnsupportedOperationException ex) {
+            FusionIdeaPlugin.log.debug("Couldn't listen for " + family + " add-in notifications", ex);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    // ignore
+                }
+            }
+            return null;
+        }
+    }
+
+    private void listen() throws IOException {
+        try (Selector selector = Selector.open()) {
+            this.selector = selector;
+
+            List<DatagramChannel> channels = new ArrayList<>();
+            try {
+                DatagramChannel channel = joinGroup(
+                        selector, StandardProtocolFamily.INET6, SSDPServer.MULTICAST_GROUP_IPV6);
+                if (channel != null) {
+                    channels.add(channel);
+                }
+                channel = joinGroup(selector, StandardProtocolFamily.INET, SSDPServer.MULTICAST_GROUP_IPV4);
+                if (channel != null) {
+                    channels.add(channel);
+                }
+
+                if (channels.isEmpty()) {
+                    FusionIdeaPlugin.log.info("Couldn't join the add-in multicast group via ipv6 or ipv4.");
+                    return;
+                }
+
+                SSDPResponseParser parser = new SSDPResponseParser();
+                ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+                while (!stopped) {
+                    selector.select();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        buffer.clear();
+                        SocketAddress source = ((DatagramChannel) key.channel()).receive(buffer);
+                        if (source == null) {
+                            continue;
+                        }
+                        // The socket is bound to the wildcard address, so it can still receive datagrams sent to
+                        // port 1900 from elsewhere
+                        if (!(source instanceof InetSocketAddress) ||
+                                !((InetSocketAddress) source).getAddress().isLoopbackAddress()) {
+                            continue;
+                        }
+
+                        switch (parser.parse(buffer.array(), 0, buffer.position())) {
+                            case ALIVE:
+                                Float version = Float.isNaN(parser.getVersion()) ? null : parser.getVersion();
+                                aliveListener.accept(new AddinEndpoint(parser.getPid(), parser.getPort(),
+                                        version, parser.getCapabilities(), System.nanoTime()));
+                                break;
+                            case BYEBYE:
+                                byebyeListener.accept(parser.getPid());
+                                break;
+                            default:
+                                // Something else, e.g. an M-SEARCH from another IDE instance
+                                break;
+                        }
+                    }
+                }
+            } finally {
+                this.selector = null;
+                for (DatagramChannel channel : channels) {
+                    channel.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import java.nio.charset.StandardCharsets;
+
+// Parses the M-SEARCH responses and NOTIFY messages sent by the add-in, reading the few headers we care about straight
+// from the datagram's bytes. An instance can be reused, but isn't thread safe.
+class SSDPResponseParser {
+    enum Result {
+        VALID,
+        ALIVE,
+        // Only the pid is available for a byebye
+        BYEBYE,
+        MALFORMED,
+        UNEXPECTED_STATUS,
+        UNEXPECTED_NTS,
+        MISSING_ST,
+        UNEXPECTED_ST,
+        MISSING_USN,
+        INVALID_USN,
+        MISSING_LOCATION,
+        REMOTE_LOCATION,
+        INVALID_LOCATION
+    }
+
+    private static final byte[] HTTP_PREFIX = bytes("HTTP/");
+    private static final byte[] NOTIFY_PREFIX = bytes("NOTIFY ");
+    private static final byte[] ST_HEADER = bytes("ST");
+    private static final byte[] NT_HEADER = bytes("NT");
+    private static final byte[] NTS_HEADER = bytes("NTS");
+    private static final byte[] USN_HEADER = bytes("USN");
+    private static final byte[] LOCATION_HEADER = bytes("LOCATION");
+    private static final byte[] SERVER_HEADER = bytes("SERVER");
+
+    private static final byte[] EXPECTED_ST = bytes("fusion_idea:debug");
+    private static final byte[] NTS_ALIVE = bytes("ssdp:alive");
+    private static final byte[] NTS_BYEBYE = bytes("ssdp:byebye");
+    private static final byte[] LOCALHOST_PREFIX = bytes("127.0.0.1:");
+    private static final byte[] SERVER_PREFIX = bytes("fusion_idea/");
+
+    private static final int NOT_FOUND = -1;
+    private static final int MAX_PORT = 65535;
+
+    private byte[] data;
+
+    private boolean notify;
+    private int statusCode;
+    private int ntsStart;
+    private int ntsEnd;
+    private int stStart;
+    private int stEnd;
+    private int usnStart;
+    private int usnEnd;
+    private int locationStart;
+    private int locationEnd;
+    private int serverStart;
+    private int serverEnd;
+
+    private int pid;
+    private int port;
+    private float version;
+    private int capabilities;
+
+    Result parse(byte[] data, int offset, int length) {
+        this.data = data;
+        notify = false;
+        statusCode = 0;
+        ntsStart = ntsEnd = NOT_FOUND;
+        stStart = stEnd = NOT_FOUND;
+        usnStart = usnEnd = NOT_FOUND;
+        locationStart = locationEnd = NOT_FOUND;
+        serverStart = serverEnd = NOT_FOUND;
+        pid = 0;
+        port = 0;
+        version = Float.NaN;
+        capabilities = 0;
+
+        int end = offset + length;
+        int lineEnd = findLineEnd(offset, end);
+
+        if (startsWith(offset, lineEnd, NOTIFY_PREFIX)) {
+            // e.g. NOTIFY * HTTP/1.1
+            notify = true;
+        } else if (startsWith(offset, lineEnd, HTTP_PREFIX)) {
+            // e.g. HTTP/1.1 200 OK
+            int statusStart = indexOf(offset, lineEnd, (byte) ' ');
+            if (statusStart == NOT_FOUND) {
+                return Result.MALFORMED;
+            }
+            statusStart++;
+            int statusEnd = indexOf(statusStart, lineEnd, (byte) ' ');
+            statusCode = parseInt(statusStart, statusEnd == NOT_FOUND ? trimEnd(statusStart, lineEnd) : statusEnd);
+        } else {
+            return Result.MALFORMED;
+        }
+
+        int lineStart = nextLine(lineEnd, end);
+        while (lineStart < end) {
+            lineEnd = findLineEnd(lineStart, end);
+            if (lineEnd == lineStart) {
+                // The empty line at the end of the headers
+                break;
+            }
+            parseHeader(lineStart, lineEnd);
+            lineStart = nextLine(lineEnd, end);
+        }
+
+        Result result;
+        if (notify) {
+            if (equals(ntsStart, ntsEnd, NTS_ALIVE)) {
+                result = Result.ALIVE;
+            } else if (equals(ntsStart, ntsEnd, NTS_BYEBYE)) {
+                result = Result.BYEBYE;
+            } else {
+                return Result.UNEXPECTED_NTS;
+            }
+        } else if (statusCode != 200) {
+            return Result.UNEXPECTED_STATUS;
+        } else {
+            result = Result.VALID;
+        }
+
+        // For a NOTIFY, stStart/stEnd hold the value of the NT header
+        if (stStart == NOT_FOUND) {
+            return Result.MISSING_ST;
+        }
+        if (!equals(stStart, stEnd, EXPECTED_ST)) {
+            return Result.UNEXPECTED_ST;
+        }
+
+        if (usnStart == NOT_FOUND) {
+            return Result.MISSING_USN;
+        }
+        // e.g. pid:1234
+        int pidStart = indexOf(usnStart, usnEnd, (byte) ':');
+        if (pidStart == NOT_FOUND) {
+            return Result.INVALID_USN;
+        }
+        pidStart++;
+        int pidEnd = indexOf(pidStart, usnEnd, (byte) ':');
+        pid = parseInt(pidStart, pidEnd == NOT_FOUND ? usnEnd : pidEnd);
+        if (pid < 0) {
+            return Result.INVALID_USN;
+        }
+
+        if (result == Result.BYEBYE) {
+            return result;
+        }
+
+        if (locationStart == NOT_FOUND) {
+            return Result.MISSING_LOCATION;
+        }
+        // e.g. 127.0.0.1:1234
+        if (!startsWith(locationStart, locationEnd, LOCALHOST_PREFIX)) {
+            return Result.REMOTE_LOCATION;
+        }
+        int portStart = locationStart + LOCALHOST_PREFIX.length;
+        int portEnd = indexOf(portStart, locationEnd, (byte) ':');
+        port = parseInt(portStart, portEnd == NOT_FOUND ? locationEnd : portEnd);
+        if (port <= 0 || port > MAX_PORT) {
+            return Result.INVALID_LOCATION;
+        }
+
+        // e.g. fusion_idea/0.6, or fusion_idea/0.7 session
+        if (serverStart != NOT_FOUND && startsWith(serverStart, serverEnd, SERVER_PREFIX)) {
+            int versionStart = serverStart + SERVER_PREFIX.length;
+            int versionEnd = indexOf(versionStart, serverEnd, (byte) ' ');
+            if (versionEnd == NOT_FOUND) {
+                versionEnd = serverEnd;
+            }
+            version = parseVersion(versionStart, versionEnd);
+            capabilities = parseCapabilities(versionEnd, serverEnd);
+        }
+
+        return result;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    int getPid() {
+        return pid;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    // NaN if the SERVER header was missing or its version couldn't be parsed
+    float getVersion() {
+        return version;
+    }
+
+    int getCapabilities() {
+        return capabilities;
+    }
+
+    // Only for diagnostic messages
+    String getServerHeader() {
+        if (serverStart == NOT_FOUND) {
+            return null;
+        }
+        return new String(data, serverStart, serverEnd - serverStart, StandardCharsets.UTF_8);
+    }
+
+    private void parseHeader(int lineStart, int lineEnd) {
+        int colon = indexOf(lineStart, lineEnd, (byte) ':');
+        if (colon == NOT_FOUND) {
+            return;
+        }
+        int nameEnd = trimEnd(lineStart, colon);
+        int valueStart = trimStart(colon + 1, lineEnd);
+        int valueEnd = trimEnd(valueStart, lineEnd);
+
+        if (equalsIgnoreCase(lineStart, nameEnd, notify ? NT_HEADER : ST_HEADER)) {
+            if (stStart == NOT_FOUND) {
+                stStart = valueStart;
+                stEnd = valueEnd;
+            }
+        } else if (notify && equalsIgnoreCase(lineStart, nameEnd, NTS_HEADER)) {
+            if (ntsStart == NOT_FOUND) {
+                ntsStart = valueStart;
+                ntsEnd = valueEnd;
+            }
+        } else if (equalsIgnoreCase(lineStart, nameEnd, USN_HEADER)) {
+            if (usnStart == NOT_FOUND) {
+                usnStart = valueStart;
+                usnEnd = valueEnd;
+            }
+        } else if (equalsIgnoreCase(lineStart, nameEnd, LOCATION_HEADER)) {
+            if (locationStart == NOT_FOUND) {
+                locationStart = valueStart;
+                locationEnd = valueEnd;
+            }
+        } else if (equalsIgnoreCase(lineStart, nameEnd, SERVER_HEADER)) {
+            if (serverStart == NOT_FOUND) {
+                serverStart = valueStart;
+                serverEnd = valueEnd;
+            }
+        }
+    }
+
+    private int findLineEnd(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == '\n') {
+                if (i > start && data[i - 1] == '\r') {
+                    return i - 1;
+                }
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private int nextLine(int lineEnd, int end) {
+        if (lineEnd < end && data[lineEnd] == '\r') {
+            lineEnd++;
+        }
+        if (lineEnd < end && data[lineEnd] == '\n') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    private int indexOf(int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private int trimStart(int start, int end) {
+        while (start < end && (data[start] == ' ' || data[start] == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && (data[end - 1] == ' ' || data[end - 1] == '\t' || data[end - 1] == '\r')) {
+            end--;
+        }
+        return end;
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equals(int start, int end, byte[] value) {
+        return end - start == value.length && startsWith(start, end, value);
+    }
+
+    // value must be upper-case ascii
+    private boolean equalsIgnoreCase(int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            byte b = data[start + i];
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns -1 if the range is empty, contains a non-digit or overflows
+    private int parseInt(int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            int digit = b - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private float parseVersion(int start, int end) {
+        long mantissa = 0;
+        long scale = 1;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenDot) {
+                    scale *= 10;
+                }
+                if (mantissa > (1L << 53) || scale > (1L << 53)) {
+                    return Float.NaN;
+                }
+            } else {
+                return Float.NaN;
+            }
+        }
+        if (!seenDigit) {
+            return Float.NaN;
+        }
+        return (float) ((double) mantissa / scale);
+    }
+
+    private int parseCapabilities(int start, int end) {
+        int capabilities = 0;
+        int tokenStart = trimStart(start, end);
+        while (tokenStart < end) {
+            int tokenEnd = indexOf(tokenStart, end, (byte) ' ');
+            if (tokenEnd == NOT_FOUND) {
+                tokenEnd = end;
+            }
+            for (int i = 0; i < AddinCapabilities.NAME_BYTES.length; i++) {
+                if (equals(tokenStart, tokenEnd, AddinCapabilities.NAME_BYTES[i])) {
+                    capabilities |= 1 << i;
+                    break;
+                }
+            }
+            tokenStart = trimStart(tokenEnd, end);
+        }
+        return capabilities;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
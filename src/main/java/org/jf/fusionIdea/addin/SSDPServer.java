@@ -0,0 +1,227 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.intellij.openapi.util.SystemInfo;
+import org.jetbrains.annotations.Nullable;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class SSDPServer {
+    // Matches no process, so the server listens for the whole discovery window and reports every response
+    public static final int ANY_PID = -1;
+
+    private final int targetPid;
+    private final Consumer<AddinEndpoint> responseListener;
+
+    public SSDPServer(int targetPid, Consumer<AddinEndpoint> responseListener) {
+        this.targetPid = targetPid;
+        this.responseListener = responseListener;
+    }
+
+    private static final byte[] SEARCH_MESSAGE =
+            ("M-SEARCH * HTTP/1.1\r\n" +
+            "MAN: \"ssdp:discover\"\r\n" +
+            "MX: 1\r\n" +
+            "ST: fusion_idea:debug\r\n" +
+            "HOST: 127.0.0.1:1900\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+
+    public static final int MULTICAST_PORT = 1900;
+    public static final String MULTICAST_GROUP_IPV4 = "239.172.243.75";
+    public static final String MULTICAST_GROUP_IPV6 = "ff01:fb68:e6b7:45f9:4acc:2559:6c6e:c014";
+
+    private static final Duration DISCOVERY_WINDOW = Duration.ofSeconds(1);
+
+    @Nullable
+    private DatagramChannel sendSSDPRequest(Selector selector, ProtocolFamily family, String localhost,
+                                            String multicastGroup) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open(family);
+            if (SystemInfo.isMac) {
+                // On MacOS, we need to bind the socket to the loopback interface
+                // to be able to send packets to the multicast group.
+                // Also note: For IPv4 to work on MacOS, the IntelliJ/PyCharm VM settings
+                // must have the `java.net.preferIPv4Stack` system property set to `true`,
+                // otherwise the VM would forcibly use IPv6 behind the scenes.
+                InetAddress localhostAddress = InetAddress.getByName(localhost);
+                channel.bind(new InetSocketAddress(localhostAddress, 0));
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF,
+                        NetworkInterface.getByInetAddress(localhostAddress));
+            } else {
+                channel.bind(null);
+            }
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            channel.configureBlocking(false);
+            channel.send(ByteBuffer.wrap(SEARCH_MESSAGE),
+                    new InetSocketAddress(InetAddress.getByName(multicastGroup), MULTICAST_PORT));
+            channel.register(selector, SelectionKey.OP_READ);
+            return channel;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+            FusionIdeaPlugin.log.debug(family + " ssdp failed", ex);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    // ignore
+                }
+            }
+            return null;
+        }
+    }
+
+    // Returns the endpoint for targetPid, or null if it didn't respond within the discovery window
+    public FluentFuture<AddinEndpoint> start(Executor executor) {
+        SettableFuture<AddinEndpoint> result = SettableFuture.create();
+        // Unlike the http requests, this does park a thread, in select(), for up to the discovery window. It only
+        // happens when there's no known endpoint for the process, or the known endpoint didn't answer a probe.
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.set(discover(result));
+            } catch (Throwable ex) {
+                result.setException(ex);
+            }
+        });
+        return FluentFuture.from(result);
+    }
+
+    @Nullable
+    private AddinEndpoint discover(ListenableFuture<?> resultFuture) throws IOException {
+        try (Selector selector = Selector.open()) {
+            // Make sure that we wake up from select() if the discovery gets cancelled
+            resultFuture.addListener(selector::wakeup, MoreExecutors.directExecutor());
+
+            List<DatagramChannel> channels = new ArrayList<>();
+            try {
+                DatagramChannel channel = sendSSDPRequest(
+                        selector, StandardProtocolFamily.INET6, "::1", MULTICAST_GROUP_IPV6);
+                if (channel != null) {
+                    channels.add(channel);
+                }
+                channel = sendSSDPRequest(
+                        selector, StandardProtocolFamily.INET, "127.0.0.1", MULTICAST_GROUP_IPV4);
+                if (channel != null) {
+                    channels.add(channel);
+                }
+
+                if (channels.isEmpty()) {
+                    throw new RuntimeException("Couldn't send SSDP request via ipv6 or ipv4");
+                }
+
+                SSDPResponseParser parser = new SSDPResponseParser();
+                ByteBuffer buffer = ByteBuffer.allocate(1024);
+                long deadline = System.nanoTime() + DISCOVERY_WINDOW.toNanos();
+
+                while (!resultFuture.isDone()) {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        break;
+                    }
+                    selector.select(remainingMillis);
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        buffer.clear();
+                        if (((DatagramChannel) key.channel()).receive(buffer) == null) {
+                            continue;
+                        }
+
+                        AddinEndpoint endpoint = parseResponse(parser, buffer.array(), buffer.position());
+                        if (endpoint == null) {
+                            continue;
+                        }
+
+                        responseListener.accept(endpoint);
+
+                        if (endpoint.getPid() != targetPid) {
+                            FusionIdeaPlugin.log.debug(String.format(
+                                    "Got valid pid %d, which isn't the pid we're looking for.", endpoint.getPid()));
+                            continue;
+                        }
+                        return endpoint;
+                    }
+                }
+            } finally {
+                for (DatagramChannel channel : channels) {
+                    channel.close();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static AddinEndpoint parseResponse(SSDPResponseParser parser, byte[] data, int length) {
+        SSDPResponseParser.Result result = parser.parse(data, 0, length);
+        if (result != SSDPResponseParser.Result.VALID) {
+            if (FusionIdeaPlugin.log.isDebugEnabled()) {
+                FusionIdeaPlugin.log.debug(String.format("Ignoring SSDP response (%s): %s",
+                        result, new String(data, 0, length, StandardCharsets.UTF_8)));
+            }
+            return null;
+        }
+
+        Float version = null;
+        if (Float.isNaN(parser.getVersion())) {
+            if (FusionIdeaPlugin.log.isDebugEnabled()) {
+                FusionIdeaPlugin.log.debug("Unexpected format for SERVER header: " + parser.getServerHeader());
+            }
+        } else {
+            version = parser.getVersion();
+        }
+
+        return new AddinEndpoint(
+                parser.getPid(), parser.getPort(), version, parser.getCapabilities(), System.nanoTime());
+    }
+}
@@ -34,10 +34,12 @@ import com.intellij.execution.RunManager;
 import com.intellij.execution.RunnerAndConfigurationSettings;
 import com.intellij.execution.configurations.RunConfiguration;
 import com.intellij.execution.process.ProcessInfo;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.ProjectJdkTable;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.UserDataHolder;
@@ -57,24 +59,67 @@ import com.jetbrains.python.sdk.PreferredSdkComparator;
 import com.jetbrains.python.sdk.PythonSdkType;
 import com.jetbrains.python.sdk.PythonSdkUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+import org.jf.fusionIdea.addin.AddinEndpoint;
+import org.jf.fusionIdea.addin.FusionAddinRegistry;
+import org.jf.fusionIdea.facet.FusionExecutableMatcher;
 import org.jf.fusionIdea.facet.FusionFacet;
 import org.jf.fusionIdea.run.FusionScriptState;
 
-import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 public class FusionLocalAttachDebuggerProvider extends PyLocalAttachDebuggerProvider {
 
-    private static final Key<Set<String>> FUSION_EXECUTABLES =
-            Key.create("FusionLocalAttachDebuggerProvider.FUSION_EXECUTABLES");
+    private static final Key<FusionExecutableMatcher> FUSION_EXECUTABLE_MATCHER =
+            Key.create("FusionLocalAttachDebuggerProvider.FUSION_EXECUTABLE_MATCHER");
+
+    private static final Key<List<XAttachDebugger>> ATTACH_DEBUGGERS =
+            Key.create("FusionLocalAttachDebuggerProvider.ATTACH_DEBUGGERS");
+
+    private static final Key<Map<Integer, AddinEndpoint>> ADDIN_ENDPOINTS =
+            Key.create("FusionLocalAttachDebuggerProvider.ADDIN_ENDPOINTS");
+
+    private static final int DISCOVERY_TIMEOUT_SECONDS = 2;
 
     private static final int CONNECTION_TIMEOUT = 20000;
 
+    // Most recent python version first. Invalidated whenever the SDK table changes.
+    private static volatile List<Sdk> sortedLocalSdks;
+
+    public static class SdkTableListener implements ProjectJdkTable.Listener {
+        @Override public void jdkAdded(@NotNull Sdk jdk) {
+            sortedLocalSdks = null;
+        }
+
+        @Override public void jdkRemoved(@NotNull Sdk jdk) {
+            sortedLocalSdks = null;
+        }
+
+        @Override public void jdkNameChanged(@NotNull Sdk jdk, @NotNull String previousName) {
+            sortedLocalSdks = null;
+        }
+    }
+
+    @NotNull
+    private static List<Sdk> getSortedLocalSdks() {
+        List<Sdk> sdks = sortedLocalSdks;
+        if (sdks == null) {
+            sdks = PythonSdkUtil.getAllLocalCPythons()
+                    .stream()
+                    .filter(sdk -> !PythonSdkUtil.isInvalid(sdk))
+                    .sorted(PreferredSdkComparator.INSTANCE)
+                    .collect(Collectors.toUnmodifiableList());
+            sortedLocalSdks = sdks;
+        }
+        return sdks;
+    }
+
     @NotNull
     private static List<XAttachDebugger> getAttachDebuggersForAllLocalSdks(@NotNull Project project) {
         Sdk selected = null;
@@ -87,49 +132,73 @@ public class FusionLocalAttachDebuggerProvider extends PyLocalAttachDebuggerProv
         }
 
         final Sdk selectedSdk = selected;
-        // most recent python version goes first
-        final List<XAttachDebugger> result = PythonSdkUtil.getAllLocalCPythons()
+        final List<XAttachDebugger> result = getSortedLocalSdks()
                 .stream()
                 .filter(sdk -> sdk != selectedSdk)
-                .filter(sdk -> !PythonSdkUtil.isInvalid(sdk))
-                .sorted(PreferredSdkComparator.INSTANCE)
                 .map(PyLocalAttachDebugger::new)
                 .collect(Collectors.toList());
         if (selectedSdk != null) {
             result.add(0, new PyLocalAttachDebugger(selectedSdk));
         }
-        return result;
+        return Collections.unmodifiableList(result);
     }
 
     @NotNull @Override
     public List<XAttachDebugger> getAvailableDebuggers(
             @NotNull Project project, @NotNull XAttachHost hostInfo, @NotNull ProcessInfo processInfo, @NotNull UserDataHolder contextHolder) {
 
-        Set<String> fusionExecutables = contextHolder.getUserData(FUSION_EXECUTABLES);
-        if (fusionExecutables == null) {
-            fusionExecutables = new HashSet();
+        // This gets called for every process in the attach dialog, so we build the matcher and the list of debuggers
+        // once per dialog.
+        FusionExecutableMatcher matcher = contextHolder.getUserData(FUSION_EXECUTABLE_MATCHER);
+        if (matcher == null) {
+            List<FusionFacet> facets = new ArrayList<>();
             for (Module module : ModuleManager.getInstance(project).getModules()) {
                 FusionFacet facet = FusionFacet.getInstance(module);
                 if (facet != null) {
-                    String fusionPath = facet.getConfiguration().getFusionPath();
-                    if (fusionPath != null) {
-                        try {
-                            fusionExecutables.add(new File(facet.getConfiguration().getFusionPath()).getCanonicalPath());
-                        } catch (IOException e) {
-                        }
-                    }
+                    facets.add(facet);
                 }
             }
-            contextHolder.putUserData(FUSION_EXECUTABLES, fusionExecutables);
+            matcher = FusionExecutableMatcher.create(facets);
+            contextHolder.putUserData(FUSION_EXECUTABLE_MATCHER, matcher);
         }
 
-        for (String fusionExecutable : fusionExecutables) {
-            if (processInfo.getCommandLine().contains(fusionExecutable)) {
-                return getAttachDebuggersForAllLocalSdks(project);
-            }
+        if (!matcher.matches(processInfo)) {
+            return Collections.emptyList();
+        }
+
+        if (!getAddinEndpoints(contextHolder).containsKey(processInfo.getPid())) {
+            // We can't attach to a process whose add-in isn't running
+            return Collections.emptyList();
+        }
+
+        List<XAttachDebugger> debuggers = contextHolder.getUserData(ATTACH_DEBUGGERS);
+        if (debuggers == null) {
+            debuggers = getAttachDebuggersForAllLocalSdks(project);
+            contextHolder.putUserData(ATTACH_DEBUGGERS, debuggers);
         }
+        return debuggers;
+    }
 
-        return Collections.emptyList();
+    // Done once per attach dialog, and cached in the context holder
+    @NotNull
+    private static Map<Integer, AddinEndpoint> getAddinEndpoints(@NotNull UserDataHolder contextHolder) {
+        Map<Integer, AddinEndpoint> endpoints = contextHolder.getUserData(ADDIN_ENDPOINTS);
+        if (endpoints == null) {
+            FusionAddinRegistry registry = FusionAddinRegistry.getInstance();
+            if (ApplicationManager.getApplication().isDispatchThread()) {
+                endpoints = registry.getEndpoints();
+                registry.refreshInBackground();
+            } else {
+                try {
+                    endpoints = registry.discoverAll().get(DISCOVERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException | java.util.concurrent.ExecutionException | TimeoutException ex) {
+                    FusionIdeaPlugin.log.warn("Error while discovering add-ins", ex);
+                    endpoints = registry.getEndpoints();
+                }
+            }
+            contextHolder.putUserData(ADDIN_ENDPOINTS, endpoints);
+        }
+        return endpoints;
     }
 
     @NotNull @Override public XAttachPresentationGroup<ProcessInfo> getPresentationGroup() {
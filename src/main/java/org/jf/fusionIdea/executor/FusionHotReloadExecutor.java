@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.executor;
+
+import com.intellij.execution.Executor;
+import com.intellij.execution.ExecutorRegistry;
+import com.intellij.execution.executors.DefaultRunExecutor;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+
+public class FusionHotReloadExecutor extends DefaultRunExecutor {
+
+    public static final String ID = "Hot Reload in Fusion 360";
+
+    public FusionHotReloadExecutor() {
+    }
+
+    public static Executor getInstance() {
+        return ExecutorRegistry.getInstance().getExecutorById(ID);
+    }
+
+    @NotNull @Override public String getActionName() {
+        return "Run with Hot Reload in Fusion 360";
+    }
+
+    @NotNull @Override public Icon getIcon() {
+        return AllIcons.Javaee.UpdateRunningApplication;
+    }
+
+    @Override public boolean isApplicable(@NotNull Project project) {
+        return FusionRunExecutor.getInstance().isApplicable(project);
+    }
+
+    @NotNull @Override public String getStartActionText() {
+        return getActionName();
+    }
+
+    @Override public String getStartActionText(String configurationName) {
+        return "Run with Hot Reload in Fusion 360";
+    }
+
+    @NotNull @Override public String getId() {
+        return ID;
+    }
+
+    @Override public String getContextActionId() {
+        return "HotReloadFusionScript";
+    }
+}
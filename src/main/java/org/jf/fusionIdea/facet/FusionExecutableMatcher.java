@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.facet;
+
+import com.intellij.execution.process.ProcessInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// The configured executables' canonical paths are computed once, so a process list is matched in a single pass with a
+// hash lookup of each process's executable, falling back to a search of its command line.
+public class FusionExecutableMatcher {
+    private final Set<String> canonicalPaths;
+    @Nullable private final Pattern commandLinePattern;
+
+    private FusionExecutableMatcher(Set<String> canonicalPaths, @Nullable Pattern commandLinePattern) {
+        this.canonicalPaths = canonicalPaths;
+        this.commandLinePattern = commandLinePattern;
+    }
+
+    @NotNull
+    public static FusionExecutableMatcher create(@NotNull Collection<FusionFacet> facets) {
+        Set<String> canonicalPaths = new HashSet<>();
+        Set<String> commandLinePaths = new LinkedHashSet<>();
+
+        for (FusionFacet facet : facets) {
+            String fusionPath = facet.getConfiguration().getFusionPath();
+            if (fusionPath == null) {
+                continue;
+            }
+
+            String canonicalFusionPath = getCanonicalPath(fusionPath);
+            canonicalPaths.add(canonicalFusionPath);
+            commandLinePaths.add(fusionPath);
+            commandLinePaths.add(canonicalFusionPath);
+        }
+
+        // A single case-insensitive pattern that matches any of the paths, so that the fallback check against the
+        // command line is a single scan, no matter how many paths there are.
+        Pattern commandLinePattern = null;
+        if (!commandLinePaths.isEmpty()) {
+            StringJoiner joiner = new StringJoiner("|");
+            for (String path : commandLinePaths) {
+                joiner.add(Pattern.quote(path));
+            }
+            commandLinePattern = Pattern.compile(joiner.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+
+        return new FusionExecutableMatcher(canonicalPaths, commandLinePattern);
+    }
+
+    @NotNull
+    public static String getCanonicalPath(@NotNull String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException ex) {
+            return path;
+        }
+    }
+
+    public boolean isEmpty() {
+        return canonicalPaths.isEmpty();
+    }
+
+    public boolean matches(@NotNull ProcessInfo processInfo) {
+        Optional<String> executablePath = processInfo.getExecutableCannonicalPath();
+        if (executablePath.isPresent() && canonicalPaths.contains(executablePath.get())) {
+            return true;
+        }
+        return matchesCommandLine(processInfo.getCommandLine());
+    }
+
+    private boolean matchesCommandLine(@Nullable String commandLine) {
+        if (commandLine == null || commandLinePattern == null) {
+            return false;
+        }
+        return commandLinePattern.matcher(commandLine).find();
+    }
+
+    @NotNull
+    public List<ProcessInfo> findMatchingProcesses(@NotNull List<ProcessInfo> processes) {
+        List<ProcessInfo> matchingProcesses = new ArrayList<>();
+        if (isEmpty()) {
+            return matchingProcesses;
+        }
+        for (ProcessInfo processInfo : processes) {
+            if (matches(processInfo)) {
+                matchingProcesses.add(processInfo);
+            }
+        }
+        return matchingProcesses;
+    }
+}
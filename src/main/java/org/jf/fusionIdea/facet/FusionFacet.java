@@ -30,7 +30,6 @@
 package org.jf.fusionIdea.facet;
 
 import com.google.common.io.CharStreams;
-import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.execution.process.ProcessInfo;
 import com.intellij.facet.Facet;
 import com.intellij.facet.FacetManager;
@@ -48,11 +47,9 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTable;
 import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.SystemInfo;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.xdebugger.attach.LocalAttachHost;
 import com.jetbrains.python.facet.LibraryContributingFacet;
 import com.jetbrains.python.library.PythonLibraryType;
 import org.jetbrains.annotations.NotNull;
@@ -66,7 +63,7 @@ import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -287,52 +284,26 @@ public class FusionFacet extends LibraryContributingFacet<FusionFacetConfigurati
         updateLibrary();
     }
 
+    // On the EDT or in a read action, this returns the cached snapshot, which may be slightly out of date
+    @NotNull
     public static List<ProcessInfo> getProcesses(Project project) {
+        FusionProcessService processService = FusionProcessService.getInstance();
         if (ApplicationManager.getApplication().isDispatchThread() ||
                 ApplicationManager.getApplication().isReadAccessAllowed()) {
-            SettableFuture<List<ProcessInfo>> future = SettableFuture.create();
-
-
-            Thread t = new Thread(() -> future.set(LocalAttachHost.INSTANCE.getProcessList()));
-            t.start();
-
-            try {
-                return future.get(5, TimeUnit.SECONDS);
-            } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                FusionIdeaPlugin.log.warn("error getting process list", e);
-                return null;
-            }
-
-        } else {
-            return LocalAttachHost.INSTANCE.getProcessList();
+            return processService.getProcesses();
         }
-    }
 
-    public List<ProcessInfo> findTargetProcesses() {
-        List<ProcessInfo> targetProcesses = new ArrayList<>();
-        String fusionPath = this.getConfiguration().getFusionPath();
-        if (fusionPath == null) {
-            return targetProcesses;
-        }
-
-        String canonicalFusionPath;
         try {
-            canonicalFusionPath = new File(fusionPath).getCanonicalPath();
-        } catch (IOException ex) {
-            canonicalFusionPath = fusionPath;
+            return processService.getFreshProcesses().get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            FusionIdeaPlugin.log.warn("error getting process list", e);
+            return processService.getProcesses();
         }
+    }
 
-        for (ProcessInfo processInfo : getProcesses(getModule().getProject())) {
-            if (processInfo.getExecutableCannonicalPath().isPresent() &&
-                    processInfo.getExecutableCannonicalPath().get().equals(canonicalFusionPath)) {
-                targetProcesses.add(processInfo);
-            } else if (StringUtil.containsIgnoreCase(processInfo.getCommandLine(), fusionPath)) {
-                targetProcesses.add(processInfo);
-            } else if (StringUtil.containsIgnoreCase(processInfo.getCommandLine(), canonicalFusionPath)) {
-                targetProcesses.add(processInfo);
-            }
-        }
-        return targetProcesses;
+    public List<ProcessInfo> findTargetProcesses() {
+        return FusionExecutableMatcher.create(Collections.singletonList(this))
+                .findMatchingProcesses(getProcesses(getModule().getProject()));
     }
 
     @Nullable
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.facet;
+
+import com.intellij.execution.process.ProcessInfo;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.messages.Topic;
+import com.intellij.xdebugger.attach.LocalAttachHost;
+import org.jetbrains.annotations.NotNull;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Keeps a snapshot of the process list, refreshed on a background thread once it's older than a short TTL, so that
+// callers on the EDT or in a read action never block on it.
+public class FusionProcessService {
+    public static final Topic<Listener> TOPIC = Topic.create("Fusion process list", Listener.class);
+
+    public interface Listener {
+        // Later changes aren't reported, to avoid a feedback loop of refreshes on machines where processes come and go
+        // constantly
+        void initialSnapshotReady();
+
+        void processExited(int pid);
+    }
+
+    private static final long SNAPSHOT_TTL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static class Snapshot {
+        final List<ProcessInfo> processes;
+        final long timestampNanos;
+
+        Snapshot(List<ProcessInfo> processes, long timestampNanos) {
+            this.processes = processes;
+            this.timestampNanos = timestampNanos;
+        }
+
+        boolean isStale() {
+            return System.nanoTime() - timestampNanos > SNAPSHOT_TTL_NANOS;
+        }
+    }
+
+    private final ExecutorService executor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Fusion Process List", 1);
+
+    private volatile Snapshot snapshot;
+    private final AtomicReference<CompletableFuture<List<ProcessInfo>>> pendingRefresh = new AtomicReference<>();
+
+    private final ConcurrentMap<Integer, CompletableFuture<Void>> exitFutures = new ConcurrentHashMap<>();
+
+    public static FusionProcessService getInstance() {
+        return ApplicationManager.getApplication().getService(FusionProcessService.class);
+    }
+
+    // Never blocks. A stale snapshot starts a refresh in the background, and the snapshot is empty until the first
+    // refresh finishes.
+    @NotNull
+    public List<ProcessInfo> getProcesses() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null || snapshot.isStale()) {
+            refresh();
+        }
+        if (snapshot == null) {
+            return Collections.emptyList();
+        }
+        return snapshot.processes;
+    }
+
+    @NotNull
+    public CompletableFuture<List<ProcessInfo>> getFreshProcesses() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot != null && !snapshot.isStale()) {
+            return CompletableFuture.completedFuture(snapshot.processes);
+        }
+        return refresh();
+    }
+
+    // The first call for a pid starts tracking it. Later calls return the same future, so this is cheap to call
+    // repeatedly.
+    @NotNull
+    public CompletableFuture<Void> getExitFuture(int pid) {
+        CompletableFuture<Void> exitFuture = exitFutures.get(pid);
+        if (exitFuture != null) {
+            return exitFuture;
+        }
+
+        Optional<ProcessHandle> process = ProcessHandle.of(pid);
+        if (process.isEmpty()) {
+            // Not tracked, since the pid could be reused by a new process later
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> newExitFuture = new CompletableFuture<>();
+        exitFuture = exitFutures.putIfAbsent(pid, newExitFuture);
+        if (exitFuture != null) {
+            return exitFuture;
+        }
+        // If the process has already exited, this runs right away, which is why it isn't done inside a map operation
+        process.get().onExit().thenRun(() -> {
+            newExitFuture.complete(null);
+            exitFutures.remove(pid, newExitFuture);
+            ApplicationManager.getApplication().getMessageBus().syncPublisher(TOPIC).processExited(pid);
+        });
+        return newExitFuture;
+    }
+
+    private CompletableFuture<List<ProcessInfo>> refresh() {
+        CompletableFuture<List<ProcessInfo>> future = new CompletableFuture<>();
+        CompletableFuture<List<ProcessInfo>> existingFuture = pendingRefresh.compareAndExchange(null, future);
+        if (existingFuture != null) {
+            return existingFuture;
+        }
+
+        executor.execute(() -> {
+            try {
+                List<ProcessInfo> processes = Collections.unmodifiableList(LocalAttachHost.INSTANCE.getProcessList());
+                Snapshot oldSnapshot = this.snapshot;
+                this.snapshot = new Snapshot(processes, System.nanoTime());
+                pendingRefresh.set(null);
+                future.complete(processes);
+
+                if (oldSnapshot == null) {
+                    ApplicationManager.getApplication().getMessageBus().syncPublisher(TOPIC).initialSnapshotReady();
+                }
+            } catch (Throwable ex) {
+                FusionIdeaPlugin.log.warn("error getting process list", ex);
+                pendingRefresh.set(null);
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.ExecutionTarget;
+import com.intellij.execution.configurations.RunConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.fusionIdea.FusionIdeaIcons;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FusionAllProcessesExecutionTarget extends ExecutionTarget {
+    private final List<FusionExecutionTarget> targets;
+
+    public FusionAllProcessesExecutionTarget(List<FusionExecutionTarget> targets) {
+        this.targets = targets;
+    }
+
+    @NotNull @Override public String getId() {
+        return "FusionAllProcesses";
+    }
+
+    @NotNull @Override public String getDisplayName() {
+        return "All Fusion Processes (" + targets.size() + ")";
+    }
+
+    @Nullable @Override public Icon getIcon() {
+        return FusionIdeaIcons.LOGO;
+    }
+
+    @NotNull
+    public List<FusionExecutionTarget> getReadyTargets() {
+        List<FusionExecutionTarget> readyTargets = new ArrayList<>();
+        for (FusionExecutionTarget target : targets) {
+            if (target.isReady()) {
+                readyTargets.add(target);
+            }
+        }
+        return readyTargets;
+    }
+
+    @Override public boolean isReady() {
+        for (FusionExecutionTarget target : targets) {
+            if (target.isReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override public boolean canRun(@NotNull RunConfiguration configuration) {
+        return configuration.getType() == FusionRunConfigurationType.getInstance();
+    }
+}
@@ -29,36 +29,204 @@
 
 package org.jf.fusionIdea.run;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonObject;
 import com.intellij.execution.process.ProcessHandler;
 import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.jetbrains.python.debugger.PyDebugProcess;
 import com.jetbrains.python.debugger.PyRemoteDebugProcess;
 import com.jetbrains.python.debugger.PyRemoteDebugProcessAware;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.concurrency.AsyncPromise;
+import org.jetbrains.concurrency.Promise;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+import org.jf.fusionIdea.addin.AddinEndpoint;
+import org.jf.fusionIdea.addin.FusionAddinClient;
 
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FusionDebugProcessHandler extends ProcessHandler implements PyRemoteDebugProcessAware {
+    // How long the add-in waits for a script to stop after interrupting it, before terminating it
+    private static final int CANCEL_TIMEOUT_MILLIS = 5000;
+
     private final Project project;
     private final AtomicBoolean closedByUser = new AtomicBoolean();
 
     @Nullable
     private PyDebugProcess debugProcess;
 
+    @Nullable
+    private volatile CompletableFuture<?> launchFuture;
+
+    @Nullable
+    private volatile FusionOutputChannel outputChannel;
+
+    private final AsyncPromise<FusionScriptResult> scriptResult = new AsyncPromise<>();
+    private volatile boolean scriptResultExpected;
+
+    private final AtomicReference<RunningScript> runningScript = new AtomicReference<>();
+
     public FusionDebugProcessHandler(Project project) {
         this.project = project;
     }
 
+    public void setLaunchFuture(@Nullable CompletableFuture<?> launchFuture) {
+        this.launchFuture = launchFuture;
+    }
+
+    @Nullable
+    public CompletableFuture<?> getLaunchFuture() {
+        return launchFuture;
+    }
+
+    public void cancelLaunch() {
+        CompletableFuture<?> launchFuture = this.launchFuture;
+        if (launchFuture != null) {
+            launchFuture.cancel(true);
+        }
+    }
+
+    // Closes the previous launch's channel, if any
+    void setOutputChannel(@Nullable FusionOutputChannel outputChannel) {
+        FusionOutputChannel previous = this.outputChannel;
+        this.outputChannel = outputChannel;
+        if (previous != null) {
+            previous.close();
+        }
+        if (outputChannel != null) {
+            // The add-in closes the channel once the script is done, after sending its result. There's nothing left
+            // to cancel then, unless a later launch has started another run.
+            RunningScript launchedScript = runningScript.get();
+            if (launchedScript != null) {
+                outputChannel.getClosedFuture().whenComplete(
+                        (unused, throwable) -> runningScript.compareAndSet(launchedScript, null));
+            }
+        }
+    }
+
+    @Nullable
+    FusionOutputChannel getOutputChannel() {
+        return outputChannel;
+    }
+
+    public void detachWhenOutputClosed() {
+        FusionOutputChannel outputChannel = this.outputChannel;
+        if (outputChannel == null) {
+            detachProcess();
+        } else {
+            outputChannel.getClosedFuture().whenComplete((unused, throwable) -> detachProcess());
+        }
+    }
+
+    // For a session that runs the script several times, e.g. in watch mode, this is the outcome of the first run
+    @NotNull
+    public Promise<FusionScriptResult> getScriptResult() {
+        return scriptResult;
+    }
+
+    // Whether the add-in will report a result for the current launch. If not, getScriptResult() is only ever rejected.
+    public boolean isScriptResultExpected() {
+        return scriptResultExpected;
+    }
+
+    void setScriptResultExpected(boolean scriptResultExpected) {
+        this.scriptResultExpected = scriptResultExpected;
+    }
+
+    void setScriptResult(@NotNull FusionScriptResult result) {
+        scriptResult.setResult(result);
+    }
+
+    void setRunningScript(@NotNull AddinEndpoint endpoint, @NotNull String runId) {
+        this.runningScript.set(new RunningScript(endpoint, runId));
+    }
+
     protected void destroyProcessImpl() {
+        cancelLaunch();
         if (debugProcess != null) {
             debugProcess.stop();
         }
-        this.detachProcessImpl();
+        stopRunningScript().whenComplete((unused, throwable) -> this.detachProcessImpl());
+    }
+
+    // Completes once the add-in has responded, or couldn't be contacted. Never fails.
+    @NotNull
+    CompletableFuture<Void> stopRunningScript() {
+        RunningScript runningScript = this.runningScript.getAndSet(null);
+        if (runningScript == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        this.notifyTextAvailable("Stopping script...\n", ProcessOutputTypes.SYSTEM);
+        CompletableFuture<Void> stopped = new CompletableFuture<>();
+        // Signing the request can block, e.g. on the password safe, and this is often called on the EDT
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            Map<String, Object> request = ImmutableMap.of(
+                    "action", "cancel",
+                    "run_id", runningScript.runId,
+                    "timeout_ms", Integer.toString(CANCEL_TIMEOUT_MILLIS));
+            CompletableFuture<String> cancelFuture;
+            try {
+                cancelFuture = FusionAddinClient.getInstance().sendRequest(runningScript.endpoint, request);
+            } catch (RuntimeException ex) {
+                cancelFuture = CompletableFuture.failedFuture(ex);
+            }
+            cancelFuture.whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    FusionIdeaPlugin.log.debug("Failed to stop script " + runningScript.runId, throwable);
+                    this.notifyTextAvailable("Couldn't contact the add-in to stop the script.\n",
+                            ProcessOutputTypes.SYSTEM);
+                } else {
+                    this.notifyTextAvailable(formatCancelOutcome(response) + "\n", ProcessOutputTypes.SYSTEM);
+                }
+                stopped.complete(null);
+            });
+        });
+        return stopped;
+    }
+
+    // e.g. {"outcome": "terminated", "message": "..."}
+    private static String formatCancelOutcome(String response) {
+        JsonObject result = FusionJson.parseObject(response);
+        String outcome = result == null ? null : FusionJson.getString(result, "outcome");
+        if (outcome == null) {
+            return response;
+        }
+        String message = FusionJson.getString(result, "message");
+
+        String text;
+        switch (outcome) {
+            case "interrupted":
+                text = "Script stopped.";
+                break;
+            case "terminated":
+                text = String.format("Script didn't stop within %d ms of being interrupted, and was terminated.",
+                        CANCEL_TIMEOUT_MILLIS);
+                break;
+            case "not_running":
+                text = "Script had already finished.";
+                break;
+            default:
+                text = "Couldn't stop the script: " + outcome;
+        }
+        if (message != null) {
+            text += " " + message;
+        }
+        return text;
     }
 
     protected void detachProcessImpl() {
+        setOutputChannel(null);
+        if (!scriptResult.isDone()) {
+            scriptResult.setError("The script didn't report a result");
+        }
         this.notifyProcessTerminated(0);
         this.notifyTextAvailable("Server stopped.\n", ProcessOutputTypes.SYSTEM);
     }
@@ -74,4 +242,14 @@ public class FusionDebugProcessHandler extends ProcessHandler implements PyRemot
     @Override public void setRemoteDebugProcess(PyRemoteDebugProcess pyRemoteDebugProcess) {
         this.debugProcess = pyRemoteDebugProcess;
     }
+
+    private static class RunningScript {
+        @NotNull final AddinEndpoint endpoint;
+        @NotNull final String runId;
+
+        RunningScript(@NotNull AddinEndpoint endpoint, @NotNull String runId) {
+            this.endpoint = endpoint;
+            this.runId = runId;
+        }
+    }
 }
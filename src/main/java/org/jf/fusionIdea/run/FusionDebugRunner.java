@@ -63,6 +63,9 @@ public class FusionDebugRunner extends AsyncProgramRunner<RunnerSettings> {
     @NotNull @Override
     protected Promise<RunContentDescriptor> execute(
             @NotNull ExecutionEnvironment environment, @NotNull RunProfileState state) throws ExecutionException {
+        if (state instanceof FusionFanOutState) {
+            return ((FusionFanOutState) state).launchAll(environment);
+        }
         return createSession(state, environment).then(XDebugSession::getRunContentDescriptor);
     }
 
@@ -36,17 +36,20 @@ import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jf.fusionIdea.FusionIdeaIcons;
-import org.jf.fusionIdea.facet.FusionFacet;
+import org.jf.fusionIdea.facet.FusionProcessService;
 
 import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
 
 public class FusionExecutionTarget extends ExecutionTarget {
     private final Project project;
     private final ProcessInfo targetProcess;
+    private final CompletableFuture<Void> exitFuture;
 
     public FusionExecutionTarget(Project project, ProcessInfo targetProcess) {
         this.project = project;
         this.targetProcess = targetProcess;
+        this.exitFuture = FusionProcessService.getInstance().getExitFuture(targetProcess.getPid());
     }
 
     @NotNull @Override public String getId() {
@@ -54,7 +57,19 @@ public class FusionExecutionTarget extends ExecutionTarget {
     }
 
     @NotNull @Override public String getDisplayName() {
-        return "Fusion Process (" + targetProcess.getPid() + ")";
+        FusionLaunchQueue launchQueue = FusionLaunchQueue.getInstance();
+        boolean running = launchQueue.isRunning(targetProcess.getPid());
+        int pendingCount = launchQueue.getPendingCount(targetProcess.getPid());
+
+        String displayName = "Fusion Process (" + targetProcess.getPid() + ")";
+        if (running && pendingCount > 0) {
+            return displayName + " - running, " + pendingCount + " queued";
+        } else if (running) {
+            return displayName + " - running";
+        } else if (pendingCount > 0) {
+            return displayName + " - " + pendingCount + " queued";
+        }
+        return displayName;
     }
 
     @Nullable @Override public Icon getIcon() {
@@ -66,12 +81,7 @@ public class FusionExecutionTarget extends ExecutionTarget {
     }
 
     @Override public boolean isReady() {
-        for (ProcessInfo processInfo : FusionFacet.getProcesses(project)) {
-            if (processInfo.getPid() == this.targetProcess.getPid()) {
-                return true;
-            }
-        }
-        return false;
+        return !exitFuture.isDone();
     }
 
     @Override public boolean canRun(@NotNull RunConfiguration configuration) {
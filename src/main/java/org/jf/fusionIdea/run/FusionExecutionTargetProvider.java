@@ -37,7 +37,11 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
+import org.jf.fusionIdea.addin.AddinEndpoint;
+import org.jf.fusionIdea.addin.FusionAddinRegistry;
+import org.jf.fusionIdea.facet.FusionExecutableMatcher;
 import org.jf.fusionIdea.facet.FusionFacet;
+import org.jf.fusionIdea.facet.FusionProcessService;
 
 import java.util.*;
 
@@ -53,16 +57,46 @@ public class FusionExecutionTargetProvider extends ExecutionTargetProvider {
 
         FusionRunConfiguration fusionRunConfiguration = (FusionRunConfiguration)runConfiguration;
 
-        Map<Integer, ProcessInfo> targetProcesses = new HashMap<>();
+        // Only offer the processes whose add-in has actually responded, so that we don't pick a process that can't run
+        // the script and then wait for the full discovery timeout.
+        FusionAddinRegistry registry = FusionAddinRegistry.getInstance();
+        Map<Integer, AddinEndpoint> endpoints = registry.getEndpoints();
+        FusionProcessService processService = FusionProcessService.getInstance();
+
+        List<FusionFacet> facets = new ArrayList<>();
         for (Module module : getApplicableModules(fusionRunConfiguration)) {
             FusionFacet facet = FusionFacet.getInstance(module);
             if (facet != null) {
-                for (ProcessInfo processInfo : facet.findTargetProcesses()) {
-                    targetProcesses.put(processInfo.getPid(), processInfo);
-                }
+                facets.add(facet);
             }
         }
 
+        // Match all facets' executables against a single process listing, rather than listing the processes once per
+        // module.
+        FusionExecutableMatcher matcher = FusionExecutableMatcher.create(facets);
+        if (matcher.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Integer, ProcessInfo> targetProcesses = new HashMap<>();
+        boolean missingEndpoint = false;
+        for (ProcessInfo processInfo : matcher.findMatchingProcesses(FusionFacet.getProcesses(project))) {
+            if (processService.getExitFuture(processInfo.getPid()).isDone()) {
+                // The process snapshot may be slightly out of date
+                continue;
+            }
+            if (endpoints.containsKey(processInfo.getPid())) {
+                targetProcesses.put(processInfo.getPid(), processInfo);
+            } else {
+                missingEndpoint = true;
+            }
+        }
+
+        if (missingEndpoint) {
+            // The targets will be updated via FusionExecutionTargetUpdater if any new add-ins respond.
+            registry.refreshInBackground();
+        }
+
         return buildTargets(project, targetProcesses.values());
     }
 
@@ -77,12 +111,16 @@ public class FusionExecutionTargetProvider extends ExecutionTargetProvider {
 
     private List<ExecutionTarget> buildTargets(Project project, Collection<ProcessInfo> targetProcesses) {
 
-        List<ExecutionTarget> targets = new ArrayList<>();
+        List<FusionExecutionTarget> processTargets = new ArrayList<>();
 
         for (ProcessInfo targetProcess : targetProcesses) {
-            targets.add(new FusionExecutionTarget(project, targetProcess));
+            processTargets.add(new FusionExecutionTarget(project, targetProcess));
         }
 
+        List<ExecutionTarget> targets = new ArrayList<>(processTargets);
+        if (processTargets.size() > 1) {
+            targets.add(new FusionAllProcessesExecutionTarget(processTargets));
+        }
         return targets;
     }
 }
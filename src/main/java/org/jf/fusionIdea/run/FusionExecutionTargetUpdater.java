@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.ExecutionTargetManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import org.jf.fusionIdea.addin.FusionAddinRegistry;
+import org.jf.fusionIdea.facet.FusionProcessService;
+
+public class FusionExecutionTargetUpdater implements FusionAddinRegistry.Listener, FusionProcessService.Listener,
+        FusionLaunchQueue.Listener {
+    private final Project project;
+
+    public FusionExecutionTargetUpdater(Project project) {
+        this.project = project;
+    }
+
+    @Override public void endpointsChanged() {
+        updateTargets();
+    }
+
+    @Override public void initialSnapshotReady() {
+        updateTargets();
+    }
+
+    @Override public void processExited(int pid) {
+        updateTargets();
+    }
+
+    @Override public void queueChanged(int pid) {
+        updateTargets();
+    }
+
+    private void updateTargets() {
+        ApplicationManager.getApplication().invokeLater(
+                () -> ExecutionTargetManager.getInstance(project).update(), project.getDisposed());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.ExecutionListener;
+import com.intellij.execution.ExecutionManager;
+import com.intellij.execution.ExecutionResult;
+import com.intellij.execution.Executor;
+import com.intellij.execution.configurations.RunProfileState;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.execution.runners.ExecutionEnvironmentBuilder;
+import com.intellij.execution.runners.ProgramRunner;
+import com.intellij.execution.ui.RunContentDescriptor;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.util.messages.MessageBusConnection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.concurrency.Promise;
+import org.jetbrains.concurrency.Promises;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Runs a configuration in several Fusion 360 processes at once, each with its own run tab, and then shows a summary of
+// the outcome in each process
+class FusionFanOutState implements RunProfileState {
+    public static final String NOTIFICATION_GROUP = "Fusion 360";
+
+    private enum Outcome {
+        PASSED,
+        FAILED,
+        // The add-in reports results, but didn't for this run, e.g. because it was stopped
+        NO_RESULT,
+        // The add-in doesn't report results, so all we know is that the script was started
+        STARTED,
+        NOT_STARTED
+    }
+
+    private final List<FusionExecutionTarget> targets;
+
+    FusionFanOutState(@NotNull List<FusionExecutionTarget> targets) {
+        this.targets = targets;
+    }
+
+    // Unused. FusionRunConfiguration only returns this state for the all-processes target, and each Fusion runner
+    // checks for it and calls launchAll() instead of going through execute().
+    @Nullable @Override
+    public ExecutionResult execute(Executor executor, @NotNull ProgramRunner<?> runner) {
+        return null;
+    }
+
+    @NotNull
+    public Promise<RunContentDescriptor> launchAll(@NotNull ExecutionEnvironment environment) {
+        List<CompletableFuture<Outcome>> results = new ArrayList<>();
+        Map<Long, CompletableFuture<Outcome>> resultsByExecutionId = new ConcurrentHashMap<>();
+
+        // The callback below is only called once a run tab is created. If a launch fails before that, e.g. because
+        // the process went away, the execution manager reports the error itself, and only tells us via this topic.
+        MessageBusConnection connection = environment.getProject().getMessageBus().connect();
+        connection.subscribe(ExecutionManager.EXECUTION_TOPIC, new ExecutionListener() {
+            @Override public void processNotStarted(@NotNull String executorId, @NotNull ExecutionEnvironment env) {
+                CompletableFuture<Outcome> result = resultsByExecutionId.get(env.getExecutionId());
+                if (result != null) {
+                    result.complete(Outcome.NOT_STARTED);
+                }
+            }
+        });
+
+        for (FusionExecutionTarget target : targets) {
+            CompletableFuture<Outcome> result = new CompletableFuture<>();
+            results.add(result);
+
+            ExecutionEnvironment targetEnvironment = new ExecutionEnvironmentBuilder(environment)
+                    .target(target)
+                    .contentToReuse(null)
+                    .build();
+            targetEnvironment.assignNewExecutionId();
+            resultsByExecutionId.put(targetEnvironment.getExecutionId(), result);
+            targetEnvironment.setCallback(descriptor -> {
+                ProcessHandler processHandler = descriptor == null ? null : descriptor.getProcessHandler();
+                if (!(processHandler instanceof FusionDebugProcessHandler) ||
+                        ((FusionDebugProcessHandler) processHandler).getLaunchFuture() == null) {
+                    result.complete(Outcome.NOT_STARTED);
+                    return;
+                }
+                FusionDebugProcessHandler fusionProcessHandler = (FusionDebugProcessHandler) processHandler;
+                fusionProcessHandler.getLaunchFuture().whenComplete((unused, throwable) -> {
+                    if (throwable != null) {
+                        result.complete(Outcome.NOT_STARTED);
+                    } else if (!fusionProcessHandler.isScriptResultExpected()) {
+                        result.complete(Outcome.STARTED);
+                    } else {
+                        fusionProcessHandler.getScriptResult()
+                                .onSuccess(scriptResult -> result.complete(
+                                        scriptResult.isSuccess() ? Outcome.PASSED : Outcome.FAILED))
+                                .onError(error -> result.complete(Outcome.NO_RESULT));
+                    }
+                });
+            });
+
+            try {
+                targetEnvironment.getRunner().execute(targetEnvironment);
+            } catch (ExecutionException ex) {
+                FusionIdeaPlugin.log.warn("Couldn't start script in Fusion 360 process " + target.getPid(), ex);
+                result.complete(Outcome.NOT_STARTED);
+            }
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenRun(() -> {
+            connection.disconnect();
+            notifySummary(environment, results);
+        });
+
+        return Promises.resolvedPromise(null);
+    }
+
+    private void notifySummary(@NotNull ExecutionEnvironment environment,
+                               @NotNull List<CompletableFuture<Outcome>> results) {
+        Map<Outcome, List<Integer>> pids = new EnumMap<>(Outcome.class);
+        for (int i = 0; i < targets.size(); i++) {
+            pids.computeIfAbsent(results.get(i).join(), unused -> new ArrayList<>()).add(targets.get(i).getPid());
+        }
+
+        String content;
+        if (!pids.containsKey(Outcome.PASSED) && !pids.containsKey(Outcome.FAILED) &&
+                !pids.containsKey(Outcome.NO_RESULT)) {
+            // None of the add-ins report results
+            content = String.format("Launch status: started in %d of %d Fusion 360 processes.",
+                    count(pids, Outcome.STARTED), targets.size());
+            if (pids.containsKey(Outcome.NOT_STARTED)) {
+                content += " Failed to start in: " + pids.get(Outcome.NOT_STARTED);
+            }
+        } else {
+            List<String> parts = new ArrayList<>();
+            addPart(parts, pids, Outcome.PASSED, "passed");
+            addPart(parts, pids, Outcome.FAILED, "failed");
+            addPart(parts, pids, Outcome.NO_RESULT, "didn't report a result");
+            addPart(parts, pids, Outcome.STARTED, "started, but the add-in doesn't report results");
+            addPart(parts, pids, Outcome.NOT_STARTED, "failed to start");
+            content = String.format("Ran in %d Fusion 360 processes: %s.", targets.size(), String.join("; ", parts));
+        }
+
+        boolean allGood = !pids.containsKey(Outcome.FAILED) && !pids.containsKey(Outcome.NO_RESULT) &&
+                !pids.containsKey(Outcome.NOT_STARTED);
+        NotificationGroupManager.getInstance().getNotificationGroup(NOTIFICATION_GROUP)
+                .createNotification(environment.getRunProfile().getName(), content,
+                        allGood ? NotificationType.INFORMATION : NotificationType.WARNING)
+                .notify(environment.getProject());
+    }
+
+    private static int count(@NotNull Map<Outcome, List<Integer>> pids, @NotNull Outcome outcome) {
+        List<Integer> outcomePids = pids.get(outcome);
+        return outcomePids == null ? 0 : outcomePids.size();
+    }
+
+    private static void addPart(@NotNull List<String> parts, @NotNull Map<Outcome, List<Integer>> pids,
+                                @NotNull Outcome outcome, @NotNull String description) {
+        List<Integer> outcomePids = pids.get(outcome);
+        if (outcomePids == null) {
+            return;
+        }
+        if (outcome == Outcome.PASSED || outcome == Outcome.STARTED) {
+            parts.add(outcomePids.size() + " " + description);
+        } else {
+            parts.add(outcomePids.size() + " " + description + " " + outcomePids);
+        }
+    }
+}
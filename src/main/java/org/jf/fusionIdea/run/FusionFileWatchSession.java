@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Listens for changes to files while a script is running, and calls changesSettled() once a burst of changes is over.
+// The session ends when the process handler is terminated.
+abstract class FusionFileWatchSession implements BulkFileListener, Disposable {
+    private final ProcessHandler processHandler;
+    private final int debounceMillis;
+    private final Alarm alarm;
+
+    private boolean disposed;
+
+    protected FusionFileWatchSession(@NotNull ProcessHandler processHandler, int debounceMillis) {
+        this.processHandler = processHandler;
+        this.debounceMillis = debounceMillis;
+        this.alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    }
+
+    // Returns false, and disposes the session, if the process handler has already terminated
+    protected boolean watch(@NotNull Project project) {
+        Disposer.register(project, this);
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, this);
+
+        processHandler.addProcessListener(new ProcessAdapter() {
+            @Override public void processTerminated(@NotNull ProcessEvent event) {
+                Disposer.dispose(FusionFileWatchSession.this);
+            }
+        });
+        if (processHandler.isProcessTerminated()) {
+            Disposer.dispose(this);
+            return false;
+        }
+        return true;
+    }
+
+    // Called with the session's lock held. Returns true if any of the paths is relevant to this session.
+    protected abstract boolean filesChanged(@NotNull List<String> paths);
+
+    protected abstract void changesSettled();
+
+    @Override public final void after(@NotNull List<? extends VFileEvent> events) {
+        List<String> paths = new ArrayList<>();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileContentChangeEvent || event instanceof VFileCreateEvent ||
+                    event instanceof VFileCopyEvent || event instanceof VFileMoveEvent) {
+                paths.add(event.getPath());
+            }
+        }
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (disposed || !filesChanged(paths)) {
+                return;
+            }
+        }
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::changesSettled, debounceMillis);
+    }
+
+    // Calls changesSettled() again, without waiting for further changes
+    protected void retry() {
+        alarm.addRequest(this::changesSettled, 0);
+    }
+
+    protected synchronized boolean isDisposed() {
+        return disposed;
+    }
+
+    @Override public void dispose() {
+        synchronized (this) {
+            disposed = true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.RunProfile;
+import com.intellij.execution.configurations.RunProfileState;
+import com.intellij.execution.configurations.RunnerSettings;
+import com.intellij.execution.runners.AsyncProgramRunner;
+import com.intellij.execution.runners.DefaultProgramRunnerKt;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.execution.ui.RunContentDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.concurrency.Promise;
+import org.jf.fusionIdea.executor.FusionHotReloadExecutor;
+
+public class FusionHotReloadRunner extends AsyncProgramRunner<RunnerSettings> {
+
+    @Override public boolean canRun(@NotNull String executorId, @NotNull RunProfile profile) {
+        return executorId.equals(FusionHotReloadExecutor.ID) && profile instanceof FusionRunConfiguration;
+    }
+
+    @NotNull @Override public String getRunnerId() {
+        return "FusionHotReloadRunner";
+    }
+
+    @NotNull @Override
+    protected Promise<RunContentDescriptor> execute(
+            @NotNull ExecutionEnvironment environment, @NotNull RunProfileState state) throws ExecutionException {
+        if (state instanceof FusionFanOutState) {
+            return ((FusionFanOutState) state).launchAll(environment);
+        }
+        FusionRunConfiguration configuration = (FusionRunConfiguration) environment.getRunProfile();
+        FusionScriptState fusionScriptState = (FusionScriptState) state;
+
+        return fusionScriptState.execute(0).then(executionResult -> {
+            // Unlike a normal run, we don't detach here. The process stays "running" for as long as we're watching
+            // for changes, and stopping it stops the hot reload session.
+            FusionHotReloadSession.start(environment.getProject(), fusionScriptState.getPid(),
+                    configuration.getScript(), executionResult.getProcessHandler());
+            return DefaultProgramRunnerKt.showRunContent(executionResult, environment);
+        });
+    }
+}
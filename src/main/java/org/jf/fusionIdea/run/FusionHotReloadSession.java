@@ -0,0 +1,179 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.google.common.collect.ImmutableMap;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+import org.jf.fusionIdea.addin.AddinCapabilities;
+import org.jf.fusionIdea.addin.CancellableFutures;
+import org.jf.fusionIdea.addin.FusionAddinClient;
+import org.jf.fusionIdea.addin.FusionAddinRegistry;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Sends changed modules under the script's directory to the add-in, which reloads them in place via pydevd_reload. Only
+// one reload is in flight at a time, and changes made meanwhile go in the next one.
+class FusionHotReloadSession extends FusionFileWatchSession {
+    private static final int DEBOUNCE_MILLIS = 100;
+
+    private final int pid;
+    private final String scriptPath;
+    private final String rootPath;
+    private final ProcessHandler processHandler;
+
+    private final Set<String> pendingPaths = new LinkedHashSet<>();
+    @Nullable private CompletableFuture<?> inFlight;
+
+    private FusionHotReloadSession(int pid, @NotNull String scriptPath, @NotNull ProcessHandler processHandler) {
+        super(processHandler, DEBOUNCE_MILLIS);
+        this.pid = pid;
+        this.scriptPath = new File(scriptPath).getAbsolutePath();
+        this.rootPath = FileUtil.toSystemIndependentName(new File(this.scriptPath).getParent()) + "/";
+        this.processHandler = processHandler;
+    }
+
+    public static void start(@NotNull Project project, int pid, @NotNull String scriptPath,
+                             @NotNull ProcessHandler processHandler) {
+        FusionHotReloadSession session = new FusionHotReloadSession(pid, scriptPath, processHandler);
+        if (session.watch(project)) {
+            processHandler.notifyTextAvailable(
+                    "Watching " + session.rootPath + " for changes to hot reload.\n", ProcessOutputTypes.SYSTEM);
+        }
+    }
+
+    @Override protected boolean filesChanged(@NotNull List<String> paths) {
+        boolean changed = false;
+        for (String path : paths) {
+            if (path.startsWith(rootPath) && path.endsWith(".py")) {
+                changed |= pendingPaths.add(path);
+            }
+        }
+        return changed;
+    }
+
+    @Override protected void changesSettled() {
+        List<String> paths;
+        synchronized (this) {
+            if (isDisposed() || pendingPaths.isEmpty() || (inFlight != null && !inFlight.isDone())) {
+                // If a reload is in progress, we'll try again when it completes
+                return;
+            }
+            paths = new ArrayList<>(pendingPaths);
+            pendingPaths.clear();
+        }
+
+        List<Map<String, Object>> modules = new ArrayList<>();
+        for (String path : paths) {
+            FusionScriptContent content = FusionScriptContent.read(path);
+            if (content != null) {
+                modules.add(ImmutableMap.of(
+                        "path", new File(path).getAbsolutePath(),
+                        "content", content.getContent(),
+                        "hash", content.getHash()));
+            }
+        }
+        if (modules.isEmpty()) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        CompletableFuture<String> reloadFuture = CancellableFutures.compose(
+                CancellableFutures.fromListenable(FusionAddinRegistry.getInstance().findEndpoint(pid)), endpoint -> {
+                    if (endpoint == null) {
+                        throw new RuntimeException(
+                                "Could not contact Fusion 360 process " + pid + ". Is the add-in running?");
+                    }
+                    if (!endpoint.hasCapability(AddinCapabilities.HOT_RELOAD)) {
+                        throw new RuntimeException("The add-in in Fusion 360 process " + pid +
+                                " doesn't support hot reload. Please update the add-in.");
+                    }
+                    return FusionAddinClient.getInstance().sendRequest(endpoint, ImmutableMap.of(
+                            "action", "reload",
+                            "script", scriptPath,
+                            "modules", modules));
+                });
+
+        synchronized (this) {
+            if (isDisposed()) {
+                reloadFuture.cancel(true);
+                return;
+            }
+            inFlight = reloadFuture;
+        }
+
+        reloadFuture.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                processHandler.notifyTextAvailable(String.format("Reloaded %d module(s) in %d ms\n",
+                                modules.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)),
+                        ProcessOutputTypes.SYSTEM);
+            } else {
+                Throwable cause = CancellableFutures.unwrap(throwable);
+                if (cause instanceof CancellationException) {
+                    return;
+                }
+                FusionIdeaPlugin.log.debug("Hot reload failed", cause);
+                processHandler.notifyTextAvailable("Hot reload failed: " + cause.getMessage() + "\n",
+                        ProcessOutputTypes.STDERR);
+            }
+
+            synchronized (this) {
+                if (isDisposed() || pendingPaths.isEmpty()) {
+                    return;
+                }
+            }
+            retry();
+        });
+    }
+
+    @Override public void dispose() {
+        super.dispose();
+        CompletableFuture<?> inFlight;
+        synchronized (this) {
+            inFlight = this.inFlight;
+        }
+        if (inFlight != null) {
+            inFlight.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+import org.jf.fusionIdea.addin.CancellableFutures;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Fusion runs scripts on its single UI thread, so the launches into each process are queued and started one at a time,
+// in priority order. A launch holds its process until runFinished says the run is over, although its own future
+// completes as soon as the add-in accepts it. A launch that's still waiting is superseded by a newer one with the same
+// key, which takes over its place in the queue.
+public class FusionLaunchQueue {
+    public static final Topic<Listener> TOPIC = Topic.create("Fusion launch queue", Listener.class);
+
+    public interface Listener {
+        void queueChanged(int pid);
+    }
+
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    public static class LaunchSupersededException extends RuntimeException {
+        public LaunchSupersededException() {
+            super("Superseded by a newer launch of the same script");
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Map<Integer, ProcessQueue> queues = new HashMap<>();
+    private long nextSequence;
+
+    public static FusionLaunchQueue getInstance() {
+        return ApplicationManager.getApplication().getService(FusionLaunchQueue.class);
+    }
+
+    // key identifies duplicate launches, or is null if this launch should never be coalesced. runFinished is called
+    // once the add-in accepts the launch, and the next launch into the process waits for the future it returns.
+    // Cancelling the returned future removes the launch from the queue, or cancels it if it has already started.
+    @NotNull
+    public CompletableFuture<Void> submit(int pid, @Nullable String key, @NotNull Priority priority,
+                                          @NotNull Supplier<CompletableFuture<Void>> launcher,
+                                          @NotNull Supplier<CompletableFuture<?>> runFinished) {
+        Job superseded = null;
+        Job job;
+        synchronized (lock) {
+            ProcessQueue queue = queues.computeIfAbsent(pid, unused -> new ProcessQueue());
+            if (key != null) {
+                for (Job pending : queue.pending) {
+                    if (key.equals(pending.key)) {
+                        superseded = pending;
+                        break;
+                    }
+                }
+            }
+
+            if (superseded != null) {
+                queue.pending.remove(superseded);
+                if (superseded.priority.compareTo(priority) < 0) {
+                    priority = superseded.priority;
+                }
+                job = new Job(pid, key, priority, superseded.sequence, launcher, runFinished);
+            } else {
+                job = new Job(pid, key, priority, nextSequence++, launcher, runFinished);
+            }
+            queue.pending.add(job);
+        }
+
+        if (superseded != null) {
+            superseded.result.completeExceptionally(new LaunchSupersededException());
+        }
+        job.result.whenComplete((unused, throwable) -> {
+            if (job.result.isCancelled()) {
+                cancel(job);
+            }
+        });
+
+        fireQueueChanged(pid);
+        startNext(pid);
+        return job.result;
+    }
+
+    // Includes the launch in progress, if any
+    public int getQueueDepth(int pid) {
+        synchronized (lock) {
+            ProcessQueue queue = queues.get(pid);
+            if (queue == null) {
+                return 0;
+            }
+            return queue.pending.size() + (queue.running != null ? 1 : 0);
+        }
+    }
+
+    // Doesn't include the launch in progress
+    public int getPendingCount(int pid) {
+        synchronized (lock) {
+            ProcessQueue queue = queues.get(pid);
+            return queue == null ? 0 : queue.pending.size();
+        }
+    }
+
+    // Whether a launch is in progress, or its run hasn't finished yet
+    public boolean isRunning(int pid) {
+        synchronized (lock) {
+            ProcessQueue queue = queues.get(pid);
+            return queue != null && queue.running != null;
+        }
+    }
+
+    private void cancel(@NotNull Job job) {
+        boolean removed;
+        CompletableFuture<Void> launch;
+        synchronized (lock) {
+            ProcessQueue queue = queues.get(job.pid);
+            removed = queue != null && queue.pending.remove(job);
+            launch = job.launch;
+        }
+        if (launch != null) {
+            launch.cancel(true);
+        }
+        if (removed) {
+            fireQueueChanged(job.pid);
+            startNext(job.pid);
+        }
+    }
+
+    private void startNext(int pid) {
+        Job job;
+        synchronized (lock) {
+            ProcessQueue queue = queues.get(pid);
+            if (queue == null || queue.running != null) {
+                return;
+            }
+            job = queue.pending.poll();
+            if (job == null) {
+                queues.remove(pid);
+                return;
+            }
+            queue.running = job;
+        }
+
+        CompletableFuture<Void> launch;
+        try {
+            launch = job.launcher.get();
+        } catch (Throwable ex) {
+            launch = CompletableFuture.failedFuture(ex);
+        }
+        synchronized (lock) {
+            job.launch = launch;
+        }
+        if (job.result.isDone()) {
+            // The job was cancelled while we were starting it
+            launch.cancel(true);
+        }
+
+        launch.whenComplete((unused, throwable) -> {
+            if (throwable != null) {
+                job.result.completeExceptionally(CancellableFutures.unwrap(throwable));
+                finish(job);
+                return;
+            }
+            job.result.complete(null);
+
+            CompletableFuture<?> runFinished;
+            try {
+                runFinished = job.runFinished.get();
+            } catch (Throwable ex) {
+                FusionIdeaPlugin.log.warn("Couldn't tell when the launch into process " + pid + " will finish", ex);
+                runFinished = CompletableFuture.completedFuture(null);
+            }
+            runFinished.whenComplete((value, ex) -> finish(job));
+        });
+    }
+
+    private void finish(@NotNull Job job) {
+        synchronized (lock) {
+            ProcessQueue queue = queues.get(job.pid);
+            if (queue != null && queue.running == job) {
+                queue.running = null;
+            }
+        }
+        fireQueueChanged(job.pid);
+        startNext(job.pid);
+    }
+
+    private void fireQueueChanged(int pid) {
+        ApplicationManager.getApplication().getMessageBus().syncPublisher(TOPIC).queueChanged(pid);
+    }
+
+    private static class ProcessQueue {
+        private final PriorityQueue<Job> pending = new PriorityQueue<>();
+        @Nullable private Job running;
+    }
+
+    private static class Job implements Comparable<Job> {
+        private final int pid;
+        @Nullable private final String key;
+        @NotNull private final Priority priority;
+        private final long sequence;
+        @NotNull private final Supplier<CompletableFuture<Void>> launcher;
+        @NotNull private final Supplier<CompletableFuture<?>> runFinished;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        @Nullable private CompletableFuture<Void> launch;
+
+        private Job(int pid, @Nullable String key, @NotNull Priority priority, long sequence,
+                    @NotNull Supplier<CompletableFuture<Void>> launcher,
+                    @NotNull Supplier<CompletableFuture<?>> runFinished) {
+            this.pid = pid;
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.launcher = launcher;
+            this.runFinished = runFinished;
+        }
+
+        @Override public int compareTo(@NotNull Job other) {
+            int result = priority.compareTo(other.priority);
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
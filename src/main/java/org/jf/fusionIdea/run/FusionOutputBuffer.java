@@ -0,0 +1,271 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Sits between the output socket and the console. Output is flushed at most once per frame, with a limited amount of
+// text per flush, and runs of identical lines are collapsed, so that a chatty script can't stall the IDE. The throttle
+// listener is told when the buffer is mostly full and again once it drains, and put() blocks if it fills up completely.
+class FusionOutputBuffer {
+    private static final int CAPACITY = 1 << 20;
+    private static final int HIGH_WATER_MARK = CAPACITY / 4 * 3;
+    private static final int LOW_WATER_MARK = CAPACITY / 4;
+
+    private static final long FRAME_MILLIS = 16;
+    private static final int MAX_CHARS_PER_FRAME = 1 << 16;
+
+    private final ProcessHandler processHandler;
+    private final Consumer<Boolean> throttleListener;
+
+    // Guarded by this
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    private int size;
+    private boolean flushScheduled;
+    private boolean throttled;
+    private boolean closed;
+
+    // Only used while holding flushLock
+    private final Object flushLock = new Object();
+    private final StringBuilder partialLine = new StringBuilder();
+    @Nullable private Key<?> partialLineType;
+    @Nullable private String lastLine;
+    @Nullable private Key<?> lastLineType;
+    private int repeatCount;
+    private boolean midLine;
+
+    // throttleListener is called with true when the add-in should slow down, and false when it can resume
+    FusionOutputBuffer(@NotNull ProcessHandler processHandler, @NotNull Consumer<Boolean> throttleListener) {
+        this.processHandler = processHandler;
+        this.throttleListener = throttleListener;
+    }
+
+    void put(@NotNull String text, @NotNull Key<?> outputType) throws InterruptedException {
+        boolean throttle = false;
+        synchronized (this) {
+            while (!closed && size > 0 && size + text.length() > CAPACITY) {
+                wait();
+            }
+            if (closed) {
+                return;
+            }
+            chunks.addLast(new Chunk(text, outputType));
+            size += text.length();
+
+            if (!throttled && size >= HIGH_WATER_MARK) {
+                throttled = true;
+                throttle = true;
+            }
+            if (!flushScheduled) {
+                flushScheduled = true;
+                AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                        () -> flush(false), FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (throttle) {
+            throttleListener.accept(true);
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        flush(true);
+    }
+
+    private void flush(boolean all) {
+        synchronized (flushLock) {
+            List<Chunk> drained = new ArrayList<>();
+            boolean resume = false;
+            boolean empty;
+            synchronized (this) {
+                int budget = all ? Integer.MAX_VALUE : MAX_CHARS_PER_FRAME;
+                while (budget > 0 && !chunks.isEmpty()) {
+                    Chunk chunk = chunks.removeFirst();
+                    if (chunk.text.length() > budget) {
+                        chunks.addFirst(new Chunk(chunk.text.substring(budget), chunk.outputType));
+                        chunk = new Chunk(chunk.text.substring(0, budget), chunk.outputType);
+                    }
+                    drained.add(chunk);
+                    budget -= chunk.text.length();
+                    size -= chunk.text.length();
+                }
+                notifyAll();
+
+                if (throttled && size <= LOW_WATER_MARK) {
+                    throttled = false;
+                    resume = !closed;
+                }
+
+                empty = chunks.isEmpty();
+                if (empty) {
+                    flushScheduled = false;
+                } else {
+                    AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                            () -> flush(false), FRAME_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            if (resume) {
+                throttleListener.accept(false);
+            }
+
+            Output output = new Output();
+            for (Chunk chunk : drained) {
+                addText(output, chunk.text, chunk.outputType);
+            }
+            if (empty) {
+                // Nothing more is waiting, so show whatever we have, rather than holding on to a partial line or
+                // repeat count until more output arrives.
+                finishLine(output);
+            }
+            output.write(processHandler);
+        }
+    }
+
+    private void addText(Output output, String text, Key<?> outputType) {
+        if (partialLine.length() > 0 && partialLineType != outputType) {
+            finishLine(output);
+        }
+
+        int start = 0;
+        while (true) {
+            int newline = text.indexOf('\n', start);
+            if (newline < 0) {
+                partialLine.append(text, start, text.length());
+                partialLineType = outputType;
+                return;
+            }
+            String line;
+            if (partialLine.length() > 0) {
+                line = partialLine.append(text, start, newline).toString();
+                partialLine.setLength(0);
+            } else {
+                line = text.substring(start, newline);
+            }
+            addLine(output, line, outputType);
+            start = newline + 1;
+        }
+    }
+
+    private void addLine(Output output, String line, Key<?> outputType) {
+        if (midLine) {
+            // The start of this line was already written out, so there's nothing to compare it against
+            writeRepeatCount(output);
+            output.add(line + "\n", outputType);
+            midLine = false;
+            lastLine = null;
+            lastLineType = null;
+            return;
+        }
+        if (outputType == lastLineType && line.equals(lastLine)) {
+            repeatCount++;
+            return;
+        }
+        writeRepeatCount(output);
+        output.add(line + "\n", outputType);
+        lastLine = line;
+        lastLineType = outputType;
+    }
+
+    private void finishLine(Output output) {
+        writeRepeatCount(output);
+        if (partialLine.length() > 0) {
+            assert partialLineType != null;
+            output.add(partialLine.toString(), partialLineType);
+            partialLine.setLength(0);
+            midLine = true;
+            lastLine = null;
+            lastLineType = null;
+        }
+    }
+
+    private void writeRepeatCount(Output output) {
+        if (repeatCount > 0) {
+            output.add(String.format("    (repeated %d more time%s)\n", repeatCount, repeatCount == 1 ? "" : "s"),
+                    ProcessOutputTypes.SYSTEM);
+            repeatCount = 0;
+        }
+    }
+
+    private static class Output {
+        private final List<Chunk> chunks = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        @Nullable private Key<?> outputType;
+
+        void add(String text, Key<?> outputType) {
+            if (outputType != this.outputType) {
+                finishChunk();
+                this.outputType = outputType;
+            }
+            this.text.append(text);
+        }
+
+        private void finishChunk() {
+            if (outputType != null && text.length() > 0) {
+                chunks.add(new Chunk(text.toString(), outputType));
+            }
+            text.setLength(0);
+        }
+
+        void write(ProcessHandler processHandler) {
+            finishChunk();
+            for (Chunk chunk : chunks) {
+                processHandler.notifyTextAvailable(chunk.text, chunk.outputType);
+            }
+        }
+    }
+
+    private static class Chunk {
+        @NotNull final String text;
+        @NotNull final Key<?> outputType;
+
+        Chunk(@NotNull String text, @NotNull Key<?> outputType) {
+            this.text = text;
+            this.outputType = outputType;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// A loopback socket that the add-in streams a script's stdout and stderr to, for runs without the debugger.
+//
+// The add-in connects to output_port and first sends the token, so that some other local process can't inject output.
+// The output_token field is the token as 32 hex characters, which the add-in must hex-decode and send as the 16 raw
+// bytes. Then come frames of a 1 byte stream id (1 stdout, 2 stderr, 3 the json result of run()), a 4 byte big-endian
+// length and that many bytes of UTF-8. The add-in closes the connection after the result.
+//
+// When the output buffer fills up, a single byte is sent back to the add-in: 1 to throttle the script's output, and 0
+// to resume.
+class FusionOutputChannel implements Closeable {
+    private static final int TOKEN_LENGTH = 16;
+    // Counted from when the add-in accepts the start request, since it only connects after that
+    private static final int ACCEPT_TIMEOUT_MILLIS = 20000;
+    private static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private static final int STREAM_STDOUT = 1;
+    private static final int STREAM_STDERR = 2;
+    private static final int STREAM_RESULT = 3;
+
+    private static final int CONTROL_RESUME = 0;
+    private static final int CONTROL_THROTTLE = 1;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final FusionDebugProcessHandler processHandler;
+    private final FusionOutputBuffer outputBuffer;
+    private final ServerSocket serverSocket;
+    private final byte[] token = new byte[TOKEN_LENGTH];
+    private final CompletableFuture<Void> closedFuture = new CompletableFuture<>();
+
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    private FusionOutputChannel(@NotNull FusionDebugProcessHandler processHandler, @NotNull ServerSocket serverSocket) {
+        this.processHandler = processHandler;
+        this.outputBuffer = new FusionOutputBuffer(processHandler, this::sendThrottle);
+        this.serverSocket = serverSocket;
+        random.nextBytes(token);
+    }
+
+    @NotNull
+    static FusionOutputChannel open(@NotNull FusionDebugProcessHandler processHandler) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        FusionOutputChannel channel = new FusionOutputChannel(processHandler, serverSocket);
+        ApplicationManager.getApplication().executeOnPooledThread(channel::run);
+        return channel;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // The add-in sends back the decoded bytes, not this hex string
+    @NotNull
+    String getToken() {
+        return BaseEncoding.base16().encode(token);
+    }
+
+    // Completes once the add-in closes the connection, or this channel is closed
+    @NotNull
+    CompletableFuture<Void> getClosedFuture() {
+        return closedFuture;
+    }
+
+    // Called once the add-in has accepted the start request. Gives up on the connection if it doesn't arrive in time.
+    void expectConnection() {
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            if (socket == null && !closed) {
+                processHandler.notifyTextAvailable(
+                        "The add-in didn't connect to send the script's output or result\n",
+                        ProcessOutputTypes.SYSTEM);
+                close();
+            }
+        }, ACCEPT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try (ServerSocket serverSocket = this.serverSocket;
+             Socket socket = serverSocket.accept()) {
+            this.socket = socket;
+            if (closed) {
+                return;
+            }
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            byte[] receivedToken = new byte[TOKEN_LENGTH];
+            input.readFully(receivedToken);
+            if (!MessageDigest.isEqual(token, receivedToken)) {
+                FusionIdeaPlugin.log.warn("Rejected output connection with an invalid token");
+                return;
+            }
+
+            readFrames(input);
+        } catch (IOException ex) {
+            if (!closed) {
+                FusionIdeaPlugin.log.debug("Output channel closed unexpectedly", ex);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            outputBuffer.close();
+            closedFuture.complete(null);
+        }
+    }
+
+    private void readFrames(DataInputStream input) throws IOException, InterruptedException {
+        while (true) {
+            int stream = input.read();
+            if (stream < 0) {
+                return;
+            }
+            int length = input.readInt();
+            if (length < 0 || length > MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid output frame length: " + length);
+            }
+            byte[] payload = new byte[length];
+            input.readFully(payload);
+
+            if (stream == STREAM_RESULT) {
+                handleResult(new String(payload, StandardCharsets.UTF_8));
+                continue;
+            }
+
+            Key<?> outputType;
+            if (stream == STREAM_STDOUT) {
+                outputType = ProcessOutputTypes.STDOUT;
+            } else if (stream == STREAM_STDERR) {
+                outputType = ProcessOutputTypes.STDERR;
+            } else {
+                // Leave room for other streams in the future
+                continue;
+            }
+            outputBuffer.put(new String(payload, StandardCharsets.UTF_8), outputType);
+        }
+    }
+
+    private void handleResult(String json) throws InterruptedException {
+        FusionScriptResult result;
+        try {
+            result = FusionScriptResult.parse(json);
+        } catch (JsonParseException ex) {
+            FusionIdeaPlugin.log.warn("Received an invalid script result from the add-in", ex);
+            return;
+        }
+
+        String duration = result.getDurationMillis() < 0 ? "" : " after " + result.getDurationMillis() + " ms";
+        if (result.isSuccess()) {
+            JsonElement value = result.getValue();
+            outputBuffer.put("\nrun() returned" + duration + (value == null ? "" : ": " + value) + "\n",
+                    ProcessOutputTypes.SYSTEM);
+        } else {
+            if (result.getTraceback() != null) {
+                outputBuffer.put(result.getTraceback(), ProcessOutputTypes.STDERR);
+            }
+            outputBuffer.put(String.format("\nrun() raised %s%s: %s\n", result.getErrorType(), duration,
+                    result.getErrorMessage()), ProcessOutputTypes.SYSTEM);
+        }
+        processHandler.setScriptResult(result);
+    }
+
+    private void sendThrottle(boolean throttle) {
+        Socket socket = this.socket;
+        if (socket == null || closed) {
+            return;
+        }
+        try {
+            OutputStream output = socket.getOutputStream();
+            synchronized (output) {
+                output.write(throttle ? CONTROL_THROTTLE : CONTROL_RESUME);
+                output.flush();
+            }
+        } catch (IOException ex) {
+            FusionIdeaPlugin.log.debug("Couldn't send throttle request to the add-in", ex);
+        }
+    }
+
+    @Override public void close() {
+        closed = true;
+        outputBuffer.close();
+        try {
+            serverSocket.close();
+            Socket socket = this.socket;
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+}
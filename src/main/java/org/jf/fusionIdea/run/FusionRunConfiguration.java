@@ -53,6 +53,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jf.fusionIdea.executor.FusionDebugExecutor;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -63,6 +64,8 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
     private String script;
     private String sdkHome;
     private boolean useModuleSdk;
+    private boolean watch;
+    private String batchArgs;
 
     public FusionRunConfiguration(Project project, ConfigurationFactory factory) {
         super(new RunConfigurationModule(project), factory);
@@ -70,7 +73,7 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
     }
 
     @Override public boolean canRunOn(@NotNull ExecutionTarget target) {
-        return target instanceof FusionExecutionTarget;
+        return target instanceof FusionExecutionTarget || target instanceof FusionAllProcessesExecutionTarget;
     }
 
     @Override public Collection<Module> getValidModules() {
@@ -85,7 +88,21 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
     public RunProfileState getState(@NotNull Executor executor, @NotNull ExecutionEnvironment environment)
             throws ExecutionException {
 
-        FusionExecutionTarget target = (FusionExecutionTarget) environment.getExecutionTarget();
+        ExecutionTarget executionTarget = environment.getExecutionTarget();
+        if (executionTarget instanceof FusionAllProcessesExecutionTarget) {
+            List<FusionExecutionTarget> targets =
+                    ((FusionAllProcessesExecutionTarget) executionTarget).getReadyTargets();
+            if (targets.isEmpty()) {
+                throw new ExecutionException(
+                        "None of the selected Fusion 360 Processes are still running. Please select a new process.");
+            }
+            if (!canRunScript()) {
+                return null;
+            }
+            return new FusionFanOutState(targets);
+        }
+
+        FusionExecutionTarget target = (FusionExecutionTarget) executionTarget;
         if (!target.isReady()) {
             ExecutionTargetManager manager = ExecutionTargetManager.getInstance(getProject());
             RunnerAndConfigurationSettings runnerAndConfigurationSettings = environment.getRunnerAndConfigurationSettings();
@@ -107,13 +124,7 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
             }
         }
 
-        VirtualFile scriptFile = LocalFileSystem.getInstance().findFileByPath(getScript());
-        if (scriptFile == null) {
-            return null;
-        }
-
-        Sdk sdk = getSdk();
-        if (sdk == null) {
+        if (!canRunScript()) {
             return null;
         }
 
@@ -121,6 +132,16 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
                 getProject(), this, target.getPid(), executor.getId().equals(FusionDebugExecutor.ID));
     }
 
+    private boolean canRunScript() {
+        VirtualFile scriptFile = LocalFileSystem.getInstance().findFileByPath(getScript());
+        if (scriptFile == null) {
+            return false;
+        }
+
+        Sdk sdk = getSdk();
+        return sdk != null;
+    }
+
     public String getScript() {
         return script;
     }
@@ -154,6 +175,35 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
         this.useModuleSdk = useModuleSdk;
     }
 
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    // One job per line
+    @Nullable
+    public String getBatchArgs() {
+        return batchArgs;
+    }
+
+    public void setBatchArgs(@Nullable String batchArgs) {
+        this.batchArgs = batchArgs;
+    }
+
+    @NotNull
+    public List<String> getBatchJobArgs() {
+        List<String> jobArgs = new ArrayList<>();
+        for (String line : StringUtil.splitByLines(StringUtil.notNullize(batchArgs))) {
+            if (!StringUtil.isEmptyOrSpaces(line)) {
+                jobArgs.add(line.trim());
+            }
+        }
+        return jobArgs;
+    }
+
     @NotNull
     public String getWorkingDirectory() {
         final String result = getProject().getBasePath();
@@ -188,6 +238,8 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
         JDOMExternalizerUtil.writeField(element, "script", script);
         JDOMExternalizerUtil.writeField(element, "sdkHome", sdkHome);
         JDOMExternalizerUtil.writeField(element, "useModuleSdk", Boolean.toString(useModuleSdk));
+        JDOMExternalizerUtil.writeField(element, "watch", Boolean.toString(watch));
+        JDOMExternalizerUtil.writeField(element, "batchArgs", batchArgs);
     }
 
     @Override public void readExternal(@NotNull Element element) throws InvalidDataException {
@@ -195,6 +247,8 @@ public class FusionRunConfiguration extends ModuleBasedConfiguration<RunConfigur
         script = JDOMExternalizerUtil.readField(element, "script");
         sdkHome = JDOMExternalizerUtil.readField(element, "sdkHome");
         useModuleSdk = Boolean.parseBoolean(JDOMExternalizerUtil.readField(element, "useModuleSdk"));
+        watch = Boolean.parseBoolean(JDOMExternalizerUtil.readField(element, "watch"));
+        batchArgs = JDOMExternalizerUtil.readField(element, "batchArgs");
     }
 
     @Nullable @Override public String suggestedName() {
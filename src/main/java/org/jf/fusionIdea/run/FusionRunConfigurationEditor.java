@@ -42,6 +42,7 @@ import com.intellij.openapi.ui.ComboBox;
 import com.intellij.openapi.ui.TextBrowseFolderListener;
 import com.intellij.openapi.ui.TextFieldWithBrowseButton;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.CollectionComboBoxModel;
@@ -69,6 +70,8 @@ public class FusionRunConfigurationEditor extends SettingsEditor<FusionRunConfig
     private ModulesComboBox myModuleComboBox;
     private JRadioButton myUseSpecifiedSdkRadioButton;
     private ComboBox myInterpreterComboBox;
+    private JCheckBox watchCheckBox;
+    private JTextArea batchArgsTextArea;
 
     public FusionRunConfigurationEditor(FusionRunConfiguration configuration) {
         FileChooserDescriptor chooserDescriptor = FileChooserDescriptorExtKt.withPythonFiles(
@@ -114,6 +117,8 @@ public class FusionRunConfigurationEditor extends SettingsEditor<FusionRunConfig
         setScript(configuration.getScript());
         setSdkHome(configuration.getSdkHome());
         setUseModuleSdk(configuration.useModuleSdk());
+        watchCheckBox.setSelected(configuration.isWatch());
+        batchArgsTextArea.setText(StringUtil.notNullize(configuration.getBatchArgs()));
 
         if (configuration.useModuleSdk()) {
             setModule(configuration.getModule());
@@ -126,6 +131,8 @@ public class FusionRunConfigurationEditor extends SettingsEditor<FusionRunConfig
         configuration.setScript(getScript());
         configuration.setSdkHome(getSdkHome());
         configuration.setUseModuleSdk(isUseModuleSdk());
+        configuration.setWatch(watchCheckBox.isSelected());
+        configuration.setBatchArgs(batchArgsTextArea.getText());
 
         if (isUseModuleSdk()) {
             configuration.setModule(getModule());
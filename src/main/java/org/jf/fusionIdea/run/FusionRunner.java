@@ -41,6 +41,8 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.concurrency.Promise;
 import org.jf.fusionIdea.executor.FusionRunExecutor;
 
+import java.util.concurrent.CompletableFuture;
+
 public class FusionRunner extends AsyncProgramRunner<RunnerSettings> {
 
     @Override public boolean canRun(@NotNull String executorId, @NotNull RunProfile profile) {
@@ -54,8 +56,33 @@ public class FusionRunner extends AsyncProgramRunner<RunnerSettings> {
     @NotNull @Override
     protected Promise<RunContentDescriptor> execute(
             @NotNull ExecutionEnvironment environment, @NotNull RunProfileState state) throws ExecutionException {
-        return ((FusionScriptState) state).execute(0).then(executionResult -> {
-            executionResult.getProcessHandler().detachProcess();
+        if (state instanceof FusionFanOutState) {
+            return ((FusionFanOutState) state).launchAll(environment);
+        }
+        FusionRunConfiguration configuration = (FusionRunConfiguration) environment.getRunProfile();
+        FusionScriptState fusionScriptState = (FusionScriptState) state;
+
+        return fusionScriptState.execute(0).then(executionResult -> {
+            if (configuration.isWatch()) {
+                // Stay attached while watching for changes. Stopping the process stops the watch.
+                FusionWatchSession.start(environment.getProject(), fusionScriptState, configuration.getScript(),
+                        (FusionDebugProcessHandler) executionResult.getProcessHandler());
+            } else {
+                // Stay attached until the script's output has been received, or for a batch, until the status of
+                // each job has been shown.
+                FusionDebugProcessHandler processHandler =
+                        (FusionDebugProcessHandler) executionResult.getProcessHandler();
+                CompletableFuture<?> launchFuture = processHandler.getLaunchFuture();
+                if (launchFuture == null) {
+                    processHandler.detachProcess();
+                } else {
+                    launchFuture.whenComplete((unused, throwable) -> {
+                        if (throwable == null) {
+                            processHandler.detachWhenOutputClosed();
+                        }
+                    });
+                }
+            }
             return DefaultProgramRunnerKt.showRunContent(executionResult, environment);
         });
     }
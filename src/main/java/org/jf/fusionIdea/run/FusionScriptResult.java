@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+// The outcome of a script's run(), as reported by the add-in. e.g.
+// {"status": "ok", "value": {"bodies": 3}, "duration_ms": 120}
+// or
+// {"status": "error", "duration_ms": 15, "error": {"type": "ValueError", "message": "...", "traceback": "..."}}
+public class FusionScriptResult {
+    private final boolean success;
+    @Nullable private final JsonElement value;
+    private final long durationMillis;
+    @Nullable private final String errorType;
+    @Nullable private final String errorMessage;
+    @Nullable private final String traceback;
+
+    private FusionScriptResult(boolean success, @Nullable JsonElement value, long durationMillis,
+                               @Nullable String errorType, @Nullable String errorMessage,
+                               @Nullable String traceback) {
+        this.success = success;
+        this.value = value;
+        this.durationMillis = durationMillis;
+        this.errorType = errorType;
+        this.errorMessage = errorMessage;
+        this.traceback = traceback;
+    }
+
+    @NotNull
+    static FusionScriptResult parse(@NotNull String json) {
+        JsonObject result = FusionJson.parseObject(json);
+        String status = result == null ? null : FusionJson.getString(result, "status");
+        if (status == null) {
+            throw new JsonParseException("Invalid script result: " + json);
+        }
+        boolean success = "ok".equals(status);
+
+        JsonElement value = result.get("value");
+        if (value != null && value.isJsonNull()) {
+            value = null;
+        }
+
+        Number duration = FusionJson.getNumber(result, "duration_ms");
+        long durationMillis = duration == null ? -1 : duration.longValue();
+
+        String errorType = null;
+        String errorMessage = null;
+        String traceback = null;
+        JsonElement error = result.get("error");
+        if (error != null && error.isJsonObject()) {
+            errorType = FusionJson.getString(error.getAsJsonObject(), "type");
+            errorMessage = FusionJson.getString(error.getAsJsonObject(), "message");
+            traceback = FusionJson.getString(error.getAsJsonObject(), "traceback");
+        }
+
+        return new FusionScriptResult(success, value, durationMillis, errorType, errorMessage, traceback);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @Nullable
+    public JsonElement getValue() {
+        return value;
+    }
+
+    // -1 if the add-in didn't report it
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Nullable
+    public String getErrorType() {
+        return errorType;
+    }
+
+    @Nullable
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    @Nullable
+    public String getTraceback() {
+        return traceback;
+    }
+}
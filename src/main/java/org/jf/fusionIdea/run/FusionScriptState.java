@@ -30,14 +30,7 @@
 package org.jf.fusionIdea.run;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.io.BaseEncoding;
-import com.google.common.io.ByteStreams;
-import com.google.common.util.concurrent.FluentFuture;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.gson.Gson;
-import com.intellij.execution.DefaultExecutionResult;
+import com.google.gson.JsonObject;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.ExecutionResult;
 import com.intellij.execution.Executor;
@@ -51,37 +44,52 @@ import com.intellij.ide.plugins.PluginManagerCore;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.extensions.PluginId;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.concurrency.Promise;
 import org.jetbrains.concurrency.Promises;
-import org.jetbrains.ide.PooledThreadExecutor;
 import org.jf.fusionIdea.FusionIdeaPlugin;
+import org.jf.fusionIdea.addin.AddinCapabilities;
+import org.jf.fusionIdea.addin.AddinEndpoint;
+import org.jf.fusionIdea.addin.AddinResponseException;
+import org.jf.fusionIdea.addin.CancellableFutures;
+import org.jf.fusionIdea.addin.FusionAddinClient;
+import org.jf.fusionIdea.addin.FusionAddinRegistry;
 import org.jf.fusionIdea.facet.FusionFacet;
-import rawhttp.core.RawHttp;
-import rawhttp.core.RawHttpResponse;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.security.*;
-import java.security.interfaces.RSAPublicKey;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class FusionScriptState implements DebuggableRunProfileState {
+    // The add-in may not respond until Fusion's UI thread gets around to the request, e.g. if another script is
+    // still running. This is never retried, so a slow response doesn't cause a duplicate launch.
+    private static final Duration START_REQUEST_TIMEOUT = Duration.ofMinutes(2);
+
+    // A launch that can't go ahead because the add-in is too old. The message is shown to the user as is.
+    static class UnsupportedByAddinException extends RuntimeException {
+        UnsupportedByAddinException(String message) {
+            super(message);
+        }
+    }
+
     private final Project project;
     @Nullable private final FusionRunConfiguration fusionRunConfiguration;
     private final int pid;
     private final boolean debug;
 
     private ServerSocket serverSocket;
-    private String osName = System.getProperty("os.name").toLowerCase();
+    @Nullable private volatile FusionScriptContent scriptContent;
 
     public FusionScriptState(Project project, @Nullable FusionRunConfiguration fusionRunConfiguration,
                              int pid, boolean debug) {
@@ -115,341 +123,347 @@ public class FusionScriptState implements DebuggableRunProfileState {
         ConsoleViewImpl consoleView = new ConsoleViewImpl(project, false);
         FusionDebugProcessHandler processHandler = new FusionDebugProcessHandler(project);
         consoleView.attachToProcess(processHandler);
-        processHandler.notifyTextAvailable("Public key hash: " + getPublicKeyHash() + "\n",
-                ProcessOutputTypes.SYSTEM);
 
-        connectToFusionAndStartScript(processHandler)
-                .addCallback(new FutureCallback<Void>() {
-            @Override public void onSuccess(Void unused) {
-            }
+        if (fusionRunConfiguration != null) {
+            // Snapshot the script as it is in the editor right now, so that add-ins that accept the script's content
+            // run exactly what the user sees, whether or not it has been saved.
+            scriptContent = FusionScriptContent.read(fusionRunConfiguration.getScript());
+        }
 
-            @Override public void onFailure(@NotNull Throwable throwable) {
+        CompletableFuture<Void> launchFuture = enqueueLaunch(processHandler);
+        processHandler.setLaunchFuture(launchFuture);
+        launchFuture.whenComplete((unused, throwable) -> {
+            if (throwable == null) {
+                return;
+            }
+            Throwable cause = CancellableFutures.unwrap(throwable);
+            if (cause instanceof CancellationException) {
+                return;
+            }
+            if (cause instanceof FusionLaunchQueue.LaunchSupersededException) {
                 processHandler.notifyTextAvailable(
-                        "Encountered error while attempting to connect to Fusion.\n", ProcessOutputTypes.SYSTEM);
-                FusionIdeaPlugin.log.error("Encountered error while attempting to connect to Fusion", throwable);
+                        "Skipped. " + cause.getMessage() + ".\n", ProcessOutputTypes.SYSTEM);
+                processHandler.destroyProcess();
+                return;
+            }
+            if (cause instanceof UnsupportedByAddinException) {
+                // Not a bug, the user just needs to update the add-in
+                processHandler.notifyTextAvailable(cause.getMessage() + "\n", ProcessOutputTypes.SYSTEM);
                 processHandler.destroyProcess();
+                return;
             }
-        }, command -> ApplicationManager.getApplication().invokeLater(command));
+            ApplicationManager.getApplication().invokeLater(() -> {
+                processHandler.notifyTextAvailable(
+                        "Encountered error while attempting to connect to Fusion.\n", ProcessOutputTypes.SYSTEM);
+                FusionIdeaPlugin.log.error("Encountered error while attempting to connect to Fusion", cause);
+                processHandler.destroyProcess();
+            });
+        });
 
-        return Promises.resolvedPromise(new DefaultExecutionResult(consoleView, processHandler));
+        return Promises.resolvedPromise(new FusionExecutionResult(consoleView, processHandler));
     }
 
-    private FluentFuture<Void> connectToFusionAndStartScript(ProcessHandler processHandler) {
-        ListeningExecutorService executor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-        FluentFuture<Integer> portFuture = new SSDPServer(pid).start(executor, processHandler);
-        return portFuture.transform(port -> {
-            assert port != null;
-            sendStartScriptHttpRequest(port);
-            return null;
-        }, executor);
+    // Unlike the initial launch from execute(), a failure here doesn't terminate the session
+    CompletableFuture<Void> relaunch(ProcessHandler processHandler) {
+        if (fusionRunConfiguration != null) {
+            scriptContent = FusionScriptContent.read(fusionRunConfiguration.getScript());
+        }
+        return enqueueLaunch(processHandler);
     }
 
-    private void sendStartScriptHttpRequest(int port) {
-        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginId.getId(FusionIdeaPlugin.ID));
-        assert plugin != null;
+    private CompletableFuture<Void> enqueueLaunch(ProcessHandler processHandler) {
+        FusionLaunchQueue launchQueue = FusionLaunchQueue.getInstance();
 
-        String pydevdPath = plugin.getPluginPath().resolve(Path.of("lib", "pydevd-1.9.0")).toAbsolutePath().toString();
+        int queueDepth = launchQueue.getQueueDepth(pid);
+        if (queueDepth > 0) {
+            processHandler.notifyTextAvailable(String.format(
+                    "Waiting for %d earlier launch(es) into Fusion 360 process %d.\n", queueDepth, pid),
+                    ProcessOutputTypes.SYSTEM);
+        }
 
-        ImmutableMap.Builder<String, String> innerRequestBuilder = ImmutableMap.builder();
+        return launchQueue.submit(pid, getLaunchKey(), getLaunchPriority(),
+                () -> connectToFusionAndStartScript(processHandler),
+                () -> getRunFinishedFuture(processHandler));
+    }
 
-        if (fusionRunConfiguration != null) {
-            innerRequestBuilder.put("script", new File(fusionRunConfiguration.getScript()).getAbsolutePath());
+    private static CompletableFuture<?> getRunFinishedFuture(ProcessHandler processHandler) {
+        // The add-in closes the output channel once the script's run() returns. Without one, there's no telling when
+        // the script finishes, so the next launch goes ahead as soon as this one is accepted. A batch request doesn't
+        // complete until all its jobs are done, so there's nothing more to wait for there.
+        FusionOutputChannel outputChannel = processHandler instanceof FusionDebugProcessHandler ?
+                ((FusionDebugProcessHandler) processHandler).getOutputChannel() : null;
+        if (outputChannel == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return outputChannel.getClosedFuture();
+    }
 
-        innerRequestBuilder.put("debug", debug ? "1" : "0");
-        innerRequestBuilder.put("pydevd_path", pydevdPath);
-        innerRequestBuilder.put("nonce", Long.toString(getNextNonce()));
-        try {
-            innerRequestBuilder.put("debug_port", Integer.toString(getServerSocket().getLocalPort()));
-        } catch (ExecutionException ex) {
-            throw new RuntimeException(ex);
+    // Launches with the same key would do exactly the same thing, so they can be coalesced
+    @Nullable
+    private String getLaunchKey() {
+        if (fusionRunConfiguration == null) {
+            return null;
         }
+        return new File(fusionRunConfiguration.getScript()).getAbsolutePath() + "\n" + debug + "\n" +
+                StringUtil.notNullize(fusionRunConfiguration.getBatchArgs());
+    }
 
-        Gson gson = new Gson();
-        ImmutableMap.Builder<String, String> outerRequestBuilder = ImmutableMap.builder();
-        try {
-            String innerRequest = gson.toJson(innerRequestBuilder.build());
-            KeyPair keyPair = getKeyPair();
-            byte[] signature = sign(keyPair.getPrivate(), innerRequest);
-
-            outerRequestBuilder.put("message", innerRequest);
-            outerRequestBuilder.put("signature", BaseEncoding.base16().encode(signature));
-            outerRequestBuilder.put("pubkey_modulus", ((RSAPublicKey)keyPair.getPublic()).getModulus().toString());
-            outerRequestBuilder.put("pubkey_exponent",
-                    ((RSAPublicKey)keyPair.getPublic()).getPublicExponent().toString());
-        } catch (NoSuchAlgorithmException | SignatureException | InvalidKeyException ex) {
-            throw new RuntimeException(ex);
+    private FusionLaunchQueue.Priority getLaunchPriority() {
+        if (debug) {
+            // Someone is waiting on the debugger to attach
+            return FusionLaunchQueue.Priority.HIGH;
         }
-
-        try {
-            URL url = new URL("http", "127.0.0.1", port, "");
-            HttpURLConnection con = (HttpURLConnection)url.openConnection();
-            con.setRequestMethod("POST");
-            con.setRequestProperty("Content-Type", "application/json; utf-8");
-            con.setDoOutput(true);
-            byte[] input = gson.toJson(outerRequestBuilder.build()).getBytes(StandardCharsets.UTF_8);
-            con.setFixedLengthStreamingMode(input.length);
-
-            try (OutputStream os = con.getOutputStream()) {
-                os.write(input, 0, input.length);
-            }
-
-            if (con.getResponseCode() != 200) {
-                throw new IOException("Invalid response");
-            }
-            try (InputStream is = con.getInputStream()) {
-                ByteStreams.toByteArray(is);
-            }
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
+        if (isBatch()) {
+            return FusionLaunchQueue.Priority.LOW;
         }
+        return FusionLaunchQueue.Priority.NORMAL;
     }
 
-    private class SSDPServer {
-        private final int targetPid;
+    // Nothing here blocks a thread while waiting on the add-in. Cancelling the returned future aborts whichever step is
+    // in progress.
+    private CompletableFuture<Void> connectToFusionAndStartScript(ProcessHandler processHandler) {
+        FusionAddinRegistry registry = FusionAddinRegistry.getInstance();
+        // A freshly discovered endpoint isn't worth retrying. Discovery would just find the same one again.
+        boolean knownEndpoint = registry.hasKnownEndpoint(pid);
 
-        public SSDPServer(int targetPid) {
-            this.targetPid = targetPid;
-        }
+        return CancellableFutures.compose(findEndpoint(registry), endpoint -> {
+            if (endpoint == null) {
+                throw addinNotFound(processHandler);
+            }
 
-        private final byte[] SEARCH_MESSAGE =
-                ("M-SEARCH * HTTP/1.1\r\n" +
-                "MAN: \"ssdp:discover\"\r\n" +
-                "MX: 1\r\n" +
-                "ST: fusion_idea:debug\r\n" +
-                "HOST: 127.0.0.1:1900\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            // The hash depends on which signature scheme the add-in supports. This may need to load the key from the
+            // credential store, which is why this is done here rather than on the EDT.
+            processHandler.notifyTextAvailable("Public key hash: " +
+                    FusionAddinClient.getSigningKey(endpoint).getPublicKeyHash() + "\n", ProcessOutputTypes.SYSTEM);
 
-        private final int MULTICAST_PORT = 1900;
-        private final String MULTICAST_GROUP_IPV4 = "239.172.243.75";
-        private final String MULTICAST_GROUP_IPV6 = "ff01:fb68:e6b7:45f9:4acc:2559:6c6e:c014";
+            checkAddinVersion(endpoint, processHandler);
 
-        private MulticastSocket sendIpv4SSDPRequest() {
-            try {
-                MulticastSocket socket;
-                if (osName.contains("mac")) {
-                    // On MacOS, we need to bind the socket to the loopback interface
-                    // to be able to send packets to the multicast group.
-                    InetAddress LOCALHOST_IPV4 = Inet4Address.getByName("127.0.0.1");
-                    socket = new MulticastSocket(new InetSocketAddress(LOCALHOST_IPV4, 0));
-                    socket.setInterface(LOCALHOST_IPV4);
-                    // Also note: For IPv4 to work on MacOS, the IntelliJ/PyCharm VM settings
-                    // must have the `java.net.preferIPv4Stack` system property set to `true`,
-                    // otherwise the VM would forcibly use IPv6 behind the scenes.
-                } else {
-                    socket = new MulticastSocket();
-                }
-                socket.setLoopbackMode(false);
-                DatagramPacket packet = new DatagramPacket(
-                    SEARCH_MESSAGE, SEARCH_MESSAGE.length,
-                    new InetSocketAddress(
-                        InetAddress.getByName(MULTICAST_GROUP_IPV4), MULTICAST_PORT));
-                socket.send(packet);
-                return socket;
-            } catch (IOException ex) {
-                FusionIdeaPlugin.log.debug("ipv4 ssdp failed");
-                return null;
-            }
-        }
+            checkBatchSupport(endpoint);
 
-        private MulticastSocket sendIpv6SSDPRequest() {
-            try {
-                MulticastSocket socket;
-                if (osName.contains("mac")) {
-                    // On MacOS, we need to bind the socket to the loopback interface
-                    // to be able to send packets to the multicast group.
-                    InetAddress LOCALHOST_IPV6 = Inet6Address.getByName("::1");
-                    socket = new MulticastSocket(new InetSocketAddress(LOCALHOST_IPV6, 0));
-                    socket.setInterface(LOCALHOST_IPV6);
-                } else {
-                    socket = new MulticastSocket();
+            return CancellableFutures.recover(sendStartScriptHttpRequest(endpoint, processHandler), ex -> {
+                // Only retry if the add-in definitely didn't get the request. If it did, e.g. and then timed out or
+                // rejected it, resending could run the script twice.
+                if (!knownEndpoint || !(ex instanceof ConnectException)) {
+                    return CompletableFuture.failedFuture(ex);
                 }
-                socket.setLoopbackMode(false);
-                DatagramPacket packet = new DatagramPacket(
-                    SEARCH_MESSAGE, SEARCH_MESSAGE.length,
-                    new InetSocketAddress(
-                        Inet6Address.getByName(MULTICAST_GROUP_IPV6), MULTICAST_PORT));
-                socket.send(packet);
-                return socket;
-            } catch (IOException ex) {
-                FusionIdeaPlugin.log.debug("ipv6 ssdp failed", ex);
-                return null;
-            }
-        }
 
-        public FluentFuture<Integer> start(ListeningExecutorService executor, ProcessHandler processHandler) {
-            return FluentFuture.from(executor.submit(() -> {
-                MulticastSocket socket;
+                // The add-in may have been restarted on a different port since we last heard from it. Try once more
+                // with a fresh discovery.
+                FusionIdeaPlugin.log.debug("Failed to start script via known endpoint: " + endpoint, ex);
+                registry.invalidate(pid);
+                return CancellableFutures.compose(findEndpoint(registry), newEndpoint -> {
+                    if (newEndpoint == null) {
+                        throw addinNotFound(processHandler);
+                    }
+                    CompletableFuture<Void> retry = sendStartScriptHttpRequest(newEndpoint, processHandler);
+                    return CancellableFutures.recover(retry, retryEx -> {
+                        registry.invalidate(pid);
+                        return CompletableFuture.failedFuture(retryEx);
+                    });
+                });
+            });
+        });
+    }
 
-                socket = sendIpv6SSDPRequest();
+    private CompletableFuture<AddinEndpoint> findEndpoint(FusionAddinRegistry registry) {
+        return CancellableFutures.fromListenable(registry.findEndpoint(pid));
+    }
 
-                if (socket == null) {
-                    socket = sendIpv4SSDPRequest();
-                }
+    private RuntimeException addinNotFound(ProcessHandler processHandler) {
+        processHandler.notifyTextAvailable(String.format(
+                "Could not contact Fusion 360 process %d. Is the add-in running?\n" +
+                        "See https://github.com/JesusFreke/fusion_idea_addin/wiki/Installing-the-add-in-" +
+                        "in-Fusion-360 for more details.\n", pid),
+                ProcessOutputTypes.SYSTEM);
+        return new RuntimeException("Did not receive a debug port for pid " + pid);
+    }
 
-                if (socket == null) {
-                    throw new RuntimeException("Couldn't send SSDP request via ipv6 or ipv4");
-                }
+    private void checkAddinVersion(AddinEndpoint endpoint, ProcessHandler processHandler) {
+        Float version = endpoint.getVersion();
+        if (version == null) {
+            return;
+        }
 
-                socket.setSoTimeout(1000);
-
-                RawHttp rawHttp = new RawHttp();
-                long startTime = System.nanoTime();
-                DatagramPacket receivedPacket = new DatagramPacket(new byte[1024], 1024);
-                int remoteDebugPort = -1;
-                do {
-                    try {
-                        socket.receive(receivedPacket);
-                    } catch (SocketTimeoutException ex) {
-                        break;
-                    }
+        FusionFacet fusionFacet;
+        if (fusionRunConfiguration != null) {
+            fusionFacet = FusionFacet.getInstance(fusionRunConfiguration.getModule());
+        } else {
+            fusionFacet = FusionFacet.getInstance(project);
+        }
+        if (fusionFacet == null) {
+            return;
+        }
+        Float latestVersion = fusionFacet.getLatestAddinVersion();
+
+        if (latestVersion != null && latestVersion > version) {
+            processHandler.notifyTextAvailable(
+                    "\nA new version of fusion_idea_addin is available: " + latestVersion + "\n" +
+                        "See https://github.com/JesusFreke/fusion_idea_addin/wiki/Installing-the-" +
+                        "add-in-in-Fusion-360 for installation instructions.\n\n",
+                    ProcessOutputTypes.SYSTEM);
+        }
+    }
 
-                    String data = new String(receivedPacket.getData(), 0, receivedPacket.getLength());
-                    RawHttpResponse<Void> response = rawHttp.parseResponse(data);
-                    if (response.getStatusCode() != 200) {
-                        FusionIdeaPlugin.log.debug(
-                                "Got SSDP response with unexpected status: %d", response.getStatusCode());
-                        continue;
-                    }
+    private boolean isBatch() {
+        return fusionRunConfiguration != null && !fusionRunConfiguration.getBatchJobArgs().isEmpty();
+    }
 
-                    String stHeader = response.getHeaders().getFirst("ST").orElse(null);
-                    if (!"fusion_idea:debug".equals(stHeader)) {
-                        if (stHeader == null) {
-                            FusionIdeaPlugin.log.debug("Response missing ST header");
-                        } else {
-                            FusionIdeaPlugin.log.debug("Got unexpected ST header: %s", stHeader);
-                        }
-                        continue;
-                    }
+    private void checkBatchSupport(AddinEndpoint endpoint) {
+        if (isBatch() && !endpoint.hasCapability(AddinCapabilities.BATCH)) {
+            throw new UnsupportedByAddinException("The add-in in Fusion 360 process " + pid +
+                    " doesn't support batch runs. Please update the add-in.");
+        }
+    }
 
-                    String usnHeader = response.getHeaders().getFirst("USN").orElse(null);
-                    if (usnHeader == null) {
-                        FusionIdeaPlugin.log.debug("Response missing USN header");
-                        continue;
-                    }
-                    if (!usnHeader.startsWith("pid:")) {
-                        FusionIdeaPlugin.log.debug("Unexpected format for USN header: %s", usnHeader);
-                    }
+    private CompletableFuture<Void> sendStartScriptHttpRequest(AddinEndpoint endpoint,
+                                                               ProcessHandler processHandler) {
+        FusionAddinClient client = FusionAddinClient.getInstance();
+        FusionScriptContent scriptContent = this.scriptContent;
+        if (scriptContent == null || !endpoint.hasCapability(AddinCapabilities.SCRIPT_CONTENT)) {
+            return sendStartScriptHttpRequest(endpoint, processHandler, null, false);
+        }
 
-                    int pid;
-                    try {
-                        pid = Integer.parseInt(usnHeader.split(":")[1]);
-                    } catch (NumberFormatException ex) {
-                        FusionIdeaPlugin.log.debug("Unexpected format for USN header: %s", usnHeader);
-                        continue;
-                    }
+        String hash = scriptContent.getHash();
+        if (!client.isScriptCached(endpoint, hash)) {
+            CompletableFuture<Void> request = sendStartScriptHttpRequest(endpoint, processHandler, scriptContent, true);
+            return CancellableFutures.transform(request, unused -> {
+                client.setScriptCached(endpoint, hash, true);
+                return null;
+            });
+        }
 
-                    if (pid != targetPid) {
-                        FusionIdeaPlugin.log.debug("Got valid pid %d, which isn't the pid we're looking for.", pid);
-                        continue;
-                    }
+        CompletableFuture<Void> request = sendStartScriptHttpRequest(endpoint, processHandler, scriptContent, false);
+        return CancellableFutures.recover(request, ex -> {
+            if (!(ex instanceof AddinResponseException) ||
+                    ((AddinResponseException) ex).getStatusCode() != HttpURLConnection.HTTP_PRECON_FAILED) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            // The add-in no longer has this content cached. Send it again.
+            client.setScriptCached(endpoint, hash, false);
+            CompletableFuture<Void> retry = sendStartScriptHttpRequest(endpoint, processHandler, scriptContent, true);
+            return CancellableFutures.transform(retry, unused -> {
+                client.setScriptCached(endpoint, hash, true);
+                return null;
+            });
+        });
+    }
 
-                    String locationHeader = response.getHeaders().getFirst("Location").orElse(null);
-                    if (locationHeader == null) {
-                        FusionIdeaPlugin.log.debug("Response missing Location header.");
-                        continue;
-                    }
-                    if (!locationHeader.startsWith("127.0.0.1:")) {
-                        FusionIdeaPlugin.log.debug(
-                                "Got remote location (%s), but expecting localhost.", locationHeader);
-                        continue;
-                    }
-                    int remotePort;
-                    try {
-                        remotePort = Integer.parseInt(locationHeader.split(":")[1]);
-                    } catch (NumberFormatException ex) {
-                        FusionIdeaPlugin.log.debug("Unexpected format for Location header: %s", locationHeader);
-                        continue;
-                    }
+    // If includeContent is false, only the content's hash is sent, and the add-in responds with a 412 if it doesn't
+    // have that content cached
+    private CompletableFuture<Void> sendStartScriptHttpRequest(AddinEndpoint endpoint,
+                                                               ProcessHandler processHandler,
+                                                               @Nullable FusionScriptContent scriptContent,
+                                                               boolean includeContent) {
+        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginId.getId(FusionIdeaPlugin.ID));
+        assert plugin != null;
 
-                    String serverHeader = response.getHeaders().getFirst("SERVER").orElse(null);
-                    if (!serverHeader.startsWith("fusion_idea/")) {
-                        FusionIdeaPlugin.log.debug("Unexpected format for SERVER header: %s", serverHeader);
-                    } else {
-                        String versionString = serverHeader.substring(12);
-                        try {
-                            float version = Float.parseFloat(versionString);
-
-                            FusionFacet fusionFacet;
-
-                            if (fusionRunConfiguration != null) {
-                                fusionFacet = FusionFacet.getInstance(fusionRunConfiguration.getModule());
-                            } else {
-                                fusionFacet = FusionFacet.getInstance(project);
-                            }
-                            Float latestVersion = fusionFacet.getLatestAddinVersion();
-
-                            if (latestVersion != null && latestVersion > version) {
-                                processHandler.notifyTextAvailable(
-                                        "\nA new version of fusion_idea_addin is available: " + latestVersion + "\n" +
-                                            "See https://github.com/JesusFreke/fusion_idea_addin/wiki/Installing-the-" +
-                                            "add-in-in-Fusion-360 for installation instructions.\n\n",
-                                        ProcessOutputTypes.SYSTEM);
-                            }
-                        } catch (NumberFormatException ex) {
-                            FusionIdeaPlugin.log.debug("Unexpected format for version number: %f", versionString);
-                        }
-                    }
-                    remoteDebugPort = remotePort;
-                    break;
-                } while (Duration.ofNanos(System.nanoTime() - startTime).compareTo(Duration.ofSeconds(1)) <= 0);
-
-                if (remoteDebugPort <= 0) {
-                    processHandler.notifyTextAvailable(String.format(
-                            "Could not contact Fusion 360 process %d. Is the add-in running?\n" +
-                                    "See https://github.com/JesusFreke/fusion_idea_addin/wiki/Installing-the-add-in-" +
-                                    "in-Fusion-360 for more details.\n", targetPid),
-                            ProcessOutputTypes.SYSTEM);
-                    throw new RuntimeException("Did not receive a debug port for pid " + targetPid);
-                }
+        String pydevdPath = plugin.getPluginPath().resolve(Path.of("lib", "pydevd-1.9.0")).toAbsolutePath().toString();
 
-                return remoteDebugPort;
-            }));
+        ImmutableMap.Builder<String, Object> requestBuilder = ImmutableMap.builder();
+
+        List<String> batchJobArgs = Collections.emptyList();
+        if (fusionRunConfiguration != null) {
+            String script = new File(fusionRunConfiguration.getScript()).getAbsolutePath();
+            requestBuilder.put("script", script);
+
+            batchJobArgs = fusionRunConfiguration.getBatchJobArgs();
+            if (!batchJobArgs.isEmpty()) {
+                List<Map<String, Object>> jobs = new ArrayList<>();
+                for (String args : batchJobArgs) {
+                    jobs.add(ImmutableMap.of("script", script, "args", args));
+                }
+                requestBuilder.put("action", "batch");
+                requestBuilder.put("jobs", jobs);
+            }
+        }
+        if (scriptContent != null) {
+            requestBuilder.put("script_hash", scriptContent.getHash());
+            if (includeContent) {
+                requestBuilder.put("script_content", scriptContent.getContent());
+            }
         }
-    }
 
-    private static KeyPair keyPair;
-    private static KeyPair getKeyPair() {
+        requestBuilder.put("debug", debug ? "1" : "0");
+        requestBuilder.put("pydevd_path", pydevdPath);
         try {
-            if (keyPair == null) {
-                KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-                keyGen.initialize(2048);
+            requestBuilder.put("debug_port", Integer.toString(getServerSocket().getLocalPort()));
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
 
-                keyPair = keyGen.generateKeyPair();
+        if (endpoint.hasCapability(AddinCapabilities.CANCEL) && processHandler instanceof FusionDebugProcessHandler) {
+            // Set this before sending the request, so that stopping the process while the request is in flight still
+            // stops the script.
+            String runId = UUID.randomUUID().toString();
+            requestBuilder.put("run_id", runId);
+            ((FusionDebugProcessHandler) processHandler).setRunningScript(endpoint, runId);
+        }
+
+        FusionOutputChannel outputChannel = null;
+        // When debugging, the script's output already comes through the debugger
+        boolean streamOutput = !debug && endpoint.hasCapability(AddinCapabilities.OUTPUT);
+        boolean reportResult = endpoint.hasCapability(AddinCapabilities.RESULT);
+        // An attach-only launch has no script, so there's no output or result to wait for
+        if ((streamOutput || reportResult) && fusionRunConfiguration != null && batchJobArgs.isEmpty() &&
+                processHandler instanceof FusionDebugProcessHandler) {
+            try {
+                outputChannel = FusionOutputChannel.open((FusionDebugProcessHandler) processHandler);
+                requestBuilder.put("output_port", Integer.toString(outputChannel.getPort()));
+                requestBuilder.put("output_token", outputChannel.getToken());
+                if (reportResult) {
+                    requestBuilder.put("stream_output", streamOutput ? "1" : "0");
+                }
+            } catch (IOException ex) {
+                // Not fatal. The script will still run, we just won't see its output or result.
+                FusionIdeaPlugin.log.warn("Couldn't open a socket for the script's output", ex);
             }
-            return keyPair;
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException(ex);
         }
-    }
+        if (processHandler instanceof FusionDebugProcessHandler) {
+            FusionDebugProcessHandler fusionProcessHandler = (FusionDebugProcessHandler) processHandler;
+            // Even if there's no channel for this launch, so that the launch queue doesn't wait on a previous one
+            fusionProcessHandler.setOutputChannel(outputChannel);
+            fusionProcessHandler.setScriptResultExpected(reportResult && outputChannel != null);
+        }
 
-    private static long nonce = 0;
-    private static long getNextNonce() {
-        return ++nonce;
-    }
+        if (!batchJobArgs.isEmpty()) {
+            int jobCount = batchJobArgs.size();
+            return FusionAddinClient.getInstance().sendStreamingRequest(endpoint, requestBuilder.build(),
+                    START_REQUEST_TIMEOUT,
+                    line -> processHandler.notifyTextAvailable(
+                            formatBatchStatus(line, jobCount) + "\n", ProcessOutputTypes.SYSTEM));
+        }
 
-    private static byte[] sign(PrivateKey privateKey, String message)
-            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-        Signature signature = Signature.getInstance("SHA1WithRSA");
-        signature.initSign(privateKey);
-        signature.update(message.getBytes(StandardCharsets.UTF_8));
-        return signature.sign();
+        CompletableFuture<Void> request = CancellableFutures.transform(
+                FusionAddinClient.getInstance().sendRequest(endpoint, requestBuilder.build(), START_REQUEST_TIMEOUT),
+                response -> null);
+        if (outputChannel != null) {
+            FusionOutputChannel channel = outputChannel;
+            request.whenComplete((unused, throwable) -> {
+                if (throwable != null) {
+                    channel.close();
+                } else {
+                    channel.expectConnection();
+                }
+            });
+        }
+        return request;
     }
 
-    private static String publicKeyHash;
-    private static String getPublicKeyHash() {
-        if (publicKeyHash == null) {
-            try {
-                RSAPublicKey publicKey = (RSAPublicKey)getKeyPair().getPublic();
-
-                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-                sha1.reset();
-                sha1.update((publicKey.getModulus().toString() + ":" + publicKey.getPublicExponent().toString()).getBytes());
+    // e.g. {"job": 0, "status": "done", "message": "..."}
+    private static String formatBatchStatus(String line, int jobCount) {
+        JsonObject status = FusionJson.parseObject(line);
+        Number job = status == null ? null : FusionJson.getNumber(status, "job");
+        String state = status == null ? null : FusionJson.getString(status, "status");
+        if (job == null || state == null) {
+            return line;
+        }
 
-                publicKeyHash = BaseEncoding.base16().encode(sha1.digest());
-            } catch (NoSuchAlgorithmException ex) {
-                throw new RuntimeException(ex);
-            }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[job %d/%d] %s", job.intValue() + 1, jobCount, state));
+        String message = FusionJson.getString(status, "message");
+        if (message != null) {
+            sb.append(": ").append(message);
         }
-        return publicKeyHash;
+        return sb.toString();
     }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.run;
+
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.jetbrains.python.psi.PyFile;
+import com.jetbrains.python.psi.PyFromImportStatement;
+import com.jetbrains.python.psi.PyImportElement;
+import com.jetbrains.python.psi.PyImportStatementBase;
+import com.jetbrains.python.psi.PyUtil;
+import com.jetbrains.python.psi.resolve.RatedResolveResult;
+import org.jetbrains.annotations.NotNull;
+import org.jf.fusionIdea.FusionIdeaPlugin;
+import org.jf.fusionIdea.addin.CancellableFutures;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Re-runs a script whenever it, or a project file that it imports, changes. A burst of changes becomes a single launch.
+class FusionWatchSession extends FusionFileWatchSession {
+    private static final int DEBOUNCE_MILLIS = 300;
+
+    private final Project project;
+    private final FusionScriptState state;
+    private final String scriptPath;
+    private final FusionDebugProcessHandler processHandler;
+
+    private volatile Set<String> watchedPaths;
+
+    // The time of the first change that hasn't been launched yet, or 0 if there is none
+    private long firstChangeNanos;
+
+    private FusionWatchSession(@NotNull Project project, @NotNull FusionScriptState state, @NotNull String scriptPath,
+                               @NotNull FusionDebugProcessHandler processHandler) {
+        super(processHandler, DEBOUNCE_MILLIS);
+        this.project = project;
+        this.state = state;
+        this.scriptPath = FileUtil.toSystemIndependentName(scriptPath);
+        this.processHandler = processHandler;
+        this.watchedPaths = Collections.singleton(this.scriptPath);
+    }
+
+    public static void start(@NotNull Project project, @NotNull FusionScriptState state, @NotNull String scriptPath,
+                             @NotNull FusionDebugProcessHandler processHandler) {
+        FusionWatchSession session = new FusionWatchSession(project, state, scriptPath, processHandler);
+        if (session.watch(project)) {
+            processHandler.notifyTextAvailable(
+                    "Watching the script and its imports for changes.\n", ProcessOutputTypes.SYSTEM);
+            session.updateWatchedPaths();
+        }
+    }
+
+    @Override protected boolean filesChanged(@NotNull List<String> paths) {
+        Set<String> watchedPaths = this.watchedPaths;
+        for (String path : paths) {
+            if (watchedPaths.contains(path)) {
+                if (firstChangeNanos == 0) {
+                    firstChangeNanos = System.nanoTime();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override protected void changesSettled() {
+        long changeNanos;
+        synchronized (this) {
+            if (isDisposed() || firstChangeNanos == 0) {
+                return;
+            }
+            changeNanos = firstChangeNanos;
+            firstChangeNanos = 0;
+        }
+
+        processHandler.cancelLaunch();
+        processHandler.notifyTextAvailable("\nChange detected. Re-running script.\n", ProcessOutputTypes.SYSTEM);
+
+        // The previous run may still be going, e.g. if it's waiting on a dialog
+        long launchNanos = System.nanoTime();
+        CompletableFuture<Void> launchFuture = CancellableFutures.compose(
+                processHandler.stopRunningScript(), unused -> state.relaunch(processHandler));
+        processHandler.setLaunchFuture(launchFuture);
+        launchFuture.whenComplete((unused, throwable) -> {
+            long now = System.nanoTime();
+            if (throwable == null) {
+                processHandler.notifyTextAvailable(String.format(
+                        "Script started %d ms after the change (launch took %d ms)\n",
+                        TimeUnit.NANOSECONDS.toMillis(now - changeNanos),
+                        TimeUnit.NANOSECONDS.toMillis(now - launchNanos)), ProcessOutputTypes.SYSTEM);
+                return;
+            }
+            Throwable cause = CancellableFutures.unwrap(throwable);
+            if (cause instanceof CancellationException) {
+                return;
+            }
+            FusionIdeaPlugin.log.debug("Re-running script failed", cause);
+            processHandler.notifyTextAvailable("Re-running script failed: " + cause.getMessage() + "\n",
+                    ProcessOutputTypes.STDERR);
+        });
+
+        // The script's imports may have changed
+        updateWatchedPaths();
+    }
+
+    private void updateWatchedPaths() {
+        ReadAction.nonBlocking(() -> findWatchedPaths(project, scriptPath))
+                .inSmartMode(project)
+                .expireWith(this)
+                .submit(AppExecutorUtil.getAppExecutorService())
+                .onSuccess(paths -> watchedPaths = paths);
+    }
+
+    @NotNull
+    private static Set<String> findWatchedPaths(@NotNull Project project, @NotNull String scriptPath) {
+        Set<String> paths = new HashSet<>();
+        paths.add(scriptPath);
+
+        VirtualFile scriptFile = LocalFileSystem.getInstance().findFileByPath(scriptPath);
+        if (scriptFile == null) {
+            return paths;
+        }
+        PsiFile scriptPsiFile = PsiManager.getInstance(project).findFile(scriptFile);
+        if (!(scriptPsiFile instanceof PyFile)) {
+            return paths;
+        }
+
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        Deque<PyFile> queue = new ArrayDeque<>();
+        queue.add((PyFile) scriptPsiFile);
+
+        while (!queue.isEmpty()) {
+            PyFile file = queue.remove();
+            for (PyImportStatementBase importStatement : file.getImportBlock()) {
+                List<PsiElement> targets = new ArrayList<>();
+                if (importStatement instanceof PyFromImportStatement) {
+                    targets.addAll(((PyFromImportStatement) importStatement).resolveImportSourceCandidates());
+                }
+                for (PyImportElement importElement : importStatement.getImportElements()) {
+                    for (RatedResolveResult result : importElement.multiResolve()) {
+                        targets.add(result.getElement());
+                    }
+                }
+
+                for (PsiElement target : targets) {
+                    if (target == null) {
+                        continue;
+                    }
+                    PsiElement element = PyUtil.turnDirIntoInit(target);
+                    PsiFile importedFile = element == null ? null : element.getContainingFile();
+                    if (!(importedFile instanceof PyFile)) {
+                        continue;
+                    }
+                    VirtualFile importedVirtualFile = importedFile.getVirtualFile();
+                    if (importedVirtualFile == null || !fileIndex.isInContent(importedVirtualFile)) {
+                        continue;
+                    }
+                    if (paths.add(importedVirtualFile.getPath())) {
+                        queue.add((PyFile) importedFile);
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+}
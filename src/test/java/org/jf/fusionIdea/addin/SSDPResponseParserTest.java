@@ -0,0 +1,246 @@
+/*
+ * Copyright 2023, Ben Gruver
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.jf.fusionIdea.addin;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class SSDPResponseParserTest {
+    private final SSDPResponseParser parser = new SSDPResponseParser();
+
+    private SSDPResponseParser.Result parse(String message) {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        return parser.parse(data, 0, data.length);
+    }
+
+    private static String searchResponse(String usn, String location, String server) {
+        return "HTTP/1.1 200 OK\r\n" +
+                "ST: fusion_idea:debug\r\n" +
+                "USN: " + usn + "\r\n" +
+                "LOCATION: " + location + "\r\n" +
+                "SERVER: " + server + "\r\n" +
+                "\r\n";
+    }
+
+    @Test
+    public void testSearchResponse() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1234", "127.0.0.1:5678", "fusion_idea/0.6")));
+        Assert.assertEquals(200, parser.getStatusCode());
+        Assert.assertEquals(1234, parser.getPid());
+        Assert.assertEquals(5678, parser.getPort());
+        Assert.assertEquals(0.6f, parser.getVersion(), 0);
+        Assert.assertEquals(0, parser.getCapabilities());
+    }
+
+    @Test
+    public void testCapabilities() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1234", "127.0.0.1:5678", "fusion_idea/0.7 session  ed25519 unknown")));
+        Assert.assertEquals(0.7f, parser.getVersion(), 0);
+        Assert.assertEquals(AddinCapabilities.SESSION | AddinCapabilities.ED25519, parser.getCapabilities());
+    }
+
+    @Test
+    public void testMissingServer() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse("HTTP/1.1 200 OK\r\nST: fusion_idea:debug\r\nUSN: pid:1\r\nLOCATION: 127.0.0.1:2\r\n\r\n"));
+        Assert.assertTrue(Float.isNaN(parser.getVersion()));
+        Assert.assertNull(parser.getServerHeader());
+    }
+
+    @Test
+    public void testNotifyAlive() {
+        Assert.assertEquals(SSDPResponseParser.Result.ALIVE, parse("NOTIFY * HTTP/1.1\r\n" +
+                "HOST: 239.255.255.250:1900\r\n" +
+                "NT: fusion_idea:debug\r\n" +
+                "NTS: ssdp:alive\r\n" +
+                "USN: pid:42\r\n" +
+                "LOCATION: 127.0.0.1:9000\r\n" +
+                "SERVER: fusion_idea/0.7 batch\r\n" +
+                "\r\n"));
+        Assert.assertEquals(42, parser.getPid());
+        Assert.assertEquals(9000, parser.getPort());
+        Assert.assertEquals(AddinCapabilities.BATCH, parser.getCapabilities());
+    }
+
+    @Test
+    public void testNotifyByebye() {
+        Assert.assertEquals(SSDPResponseParser.Result.BYEBYE, parse("NOTIFY * HTTP/1.1\r\n" +
+                "NT: fusion_idea:debug\r\n" +
+                "NTS: ssdp:byebye\r\n" +
+                "USN: pid:42\r\n" +
+                "\r\n"));
+        Assert.assertEquals(42, parser.getPid());
+    }
+
+    @Test
+    public void testUnexpectedNts() {
+        Assert.assertEquals(SSDPResponseParser.Result.UNEXPECTED_NTS, parse("NOTIFY * HTTP/1.1\r\n" +
+                "NT: fusion_idea:debug\r\n" +
+                "NTS: ssdp:update\r\n" +
+                "USN: pid:42\r\n" +
+                "\r\n"));
+    }
+
+    @Test
+    public void testLowerCaseHeaders() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID, parse("HTTP/1.1 200 OK\r\n" +
+                "st: fusion_idea:debug\r\n" +
+                "usn: pid:12\r\n" +
+                "location: 127.0.0.1:34\r\n" +
+                "server: fusion_idea/0.6\r\n" +
+                "\r\n"));
+        Assert.assertEquals(12, parser.getPid());
+        Assert.assertEquals(34, parser.getPort());
+    }
+
+    @Test
+    public void testNewlineOnlyLineEndings() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID, parse("HTTP/1.1 200 OK\n" +
+                "ST: fusion_idea:debug\n" +
+                "USN: pid:12\n" +
+                "LOCATION:127.0.0.1:34  \n" +
+                "SERVER: fusion_idea/0.6\n" +
+                "\n"));
+        Assert.assertEquals(12, parser.getPid());
+        Assert.assertEquals(34, parser.getPort());
+        Assert.assertEquals(0.6f, parser.getVersion(), 0);
+    }
+
+    @Test
+    public void testReuse() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1234", "127.0.0.1:5678", "fusion_idea/0.7 session")));
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse("HTTP/1.1 200 OK\r\nST: fusion_idea:debug\r\nUSN: pid:1\r\nLOCATION: 127.0.0.1:2\r\n\r\n"));
+        Assert.assertEquals(1, parser.getPid());
+        Assert.assertEquals(2, parser.getPort());
+        Assert.assertEquals(0, parser.getCapabilities());
+    }
+
+    @Test
+    public void testMalformed() {
+        Assert.assertEquals(SSDPResponseParser.Result.MALFORMED, parse("M-SEARCH * HTTP/1.1\r\n\r\n"));
+        Assert.assertEquals(SSDPResponseParser.Result.MALFORMED, parse("HTTP/1.1\r\n\r\n"));
+        Assert.assertEquals(SSDPResponseParser.Result.MALFORMED, parse(""));
+        Assert.assertEquals(SSDPResponseParser.Result.UNEXPECTED_STATUS,
+                parse("HTTP/1.1 404 Not Found\r\n\r\n"));
+        Assert.assertEquals(SSDPResponseParser.Result.UNEXPECTED_STATUS, parse("HTTP/1.1 2x0 OK\r\n\r\n"));
+    }
+
+    @Test
+    public void testMissingHeaders() {
+        Assert.assertEquals(SSDPResponseParser.Result.MISSING_ST,
+                parse("HTTP/1.1 200 OK\r\nUSN: pid:1\r\nLOCATION: 127.0.0.1:2\r\n\r\n"));
+        Assert.assertEquals(SSDPResponseParser.Result.UNEXPECTED_ST,
+                parse("HTTP/1.1 200 OK\r\nST: upnp:rootdevice\r\nUSN: pid:1\r\nLOCATION: 127.0.0.1:2\r\n\r\n"));
+        Assert.assertEquals(SSDPResponseParser.Result.MISSING_USN,
+                parse("HTTP/1.1 200 OK\r\nST: fusion_idea:debug\r\nLOCATION: 127.0.0.1:2\r\n\r\n"));
+        Assert.assertEquals(SSDPResponseParser.Result.MISSING_LOCATION,
+                parse("HTTP/1.1 200 OK\r\nST: fusion_idea:debug\r\nUSN: pid:1\r\n\r\n"));
+    }
+
+    @Test
+    public void testHeadersAfterBlankLineIgnored() {
+        Assert.assertEquals(SSDPResponseParser.Result.MISSING_LOCATION,
+                parse("HTTP/1.1 200 OK\r\nST: fusion_idea:debug\r\nUSN: pid:1\r\n\r\nLOCATION: 127.0.0.1:2\r\n"));
+    }
+
+    @Test
+    public void testRemoteLocation() {
+        Assert.assertEquals(SSDPResponseParser.Result.REMOTE_LOCATION,
+                parse(searchResponse("pid:1234", "192.168.1.5:5678", "fusion_idea/0.6")));
+    }
+
+    @Test
+    public void testInvalidUsn() {
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_USN,
+                parse(searchResponse("1234", "127.0.0.1:5678", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_USN,
+                parse(searchResponse("pid:", "127.0.0.1:5678", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_USN,
+                parse(searchResponse("pid:12a4", "127.0.0.1:5678", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_USN,
+                parse(searchResponse("pid:-5", "127.0.0.1:5678", "fusion_idea/0.6")));
+    }
+
+    @Test
+    public void testOverflowingPid() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:2147483647", "127.0.0.1:5678", "fusion_idea/0.6")));
+        Assert.assertEquals(Integer.MAX_VALUE, parser.getPid());
+
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_USN,
+                parse(searchResponse("pid:2147483648", "127.0.0.1:5678", "fusion_idea/0.6")));
+        // Wraps around to 1 with 32-bit arithmetic
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_USN,
+                parse(searchResponse("pid:4294967297", "127.0.0.1:5678", "fusion_idea/0.6")));
+    }
+
+    @Test
+    public void testInvalidPort() {
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_LOCATION,
+                parse(searchResponse("pid:1", "127.0.0.1:", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_LOCATION,
+                parse(searchResponse("pid:1", "127.0.0.1:0", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_LOCATION,
+                parse(searchResponse("pid:1", "127.0.0.1:65536", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.INVALID_LOCATION,
+                parse(searchResponse("pid:1", "127.0.0.1:4294967297", "fusion_idea/0.6")));
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1", "127.0.0.1:65535", "fusion_idea/0.6")));
+    }
+
+    @Test
+    public void testInvalidVersion() {
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1", "127.0.0.1:2", "fusion_idea/abc")));
+        Assert.assertTrue(Float.isNaN(parser.getVersion()));
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1", "127.0.0.1:2", "fusion_idea/1.2.3")));
+        Assert.assertTrue(Float.isNaN(parser.getVersion()));
+        Assert.assertEquals(SSDPResponseParser.Result.VALID,
+                parse(searchResponse("pid:1", "127.0.0.1:2", "fusion_idea/99999999999999999999")));
+        Assert.assertTrue(Float.isNaN(parser.getVersion()));
+    }
+
+    @Test
+    public void testOffset() {
+        byte[] message = searchResponse("pid:7", "127.0.0.1:8", "fusion_idea/0.6").getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[message.length + 20];
+        System.arraycopy(message, 0, data, 10, message.length);
+        Assert.assertEquals(SSDPResponseParser.Result.VALID, parser.parse(data, 10, message.length));
+        Assert.assertEquals(7, parser.getPid());
+        Assert.assertEquals(8, parser.getPort());
+    }
+}